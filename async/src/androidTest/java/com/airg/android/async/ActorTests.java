@@ -0,0 +1,237 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class ActorTests {
+    private final ExecutorService pool = Executors.newFixedThreadPool (4);
+
+    @After
+    public void tearDown () {
+        pool.shutdownNow ();
+    }
+
+    @Test
+    public void processesMessagesInOrderWithoutLocks () throws InterruptedException {
+        final int senders = 8;
+        final int perSender = 1000;
+        final CountDownLatch done = new CountDownLatch (senders * perSender);
+        final AtomicInteger running = new AtomicInteger ();
+        final AtomicInteger violations = new AtomicInteger ();
+
+        final Actor<int[]> counter = new Actor<int[]> (pool, 16) {
+            // plain fields: only onMessage touches them
+            private final int[] lastSeen = new int[senders];
+
+            {
+                for (int i = 0; i < senders; i++)
+                    lastSeen[i] = -1;
+            }
+
+            @Override protected void onMessage (final int[] message) {
+                if (1 != running.incrementAndGet ())
+                    violations.incrementAndGet ();
+
+                if (lastSeen[message[0]] != message[1] - 1)
+                    violations.incrementAndGet ();
+
+                lastSeen[message[0]] = message[1];
+                running.decrementAndGet ();
+                done.countDown ();
+            }
+        };
+
+        for (int s = 0; s < senders; s++) {
+            final int sender = s;
+
+            new Thread (new Runnable () {
+                @Override public void run () {
+                    for (int i = 0; i < perSender; i++)
+                        counter.tell (new int[] {sender, i});
+                }
+            }).start ();
+        }
+
+        assertTrue (done.await (5, TimeUnit.SECONDS));
+        assertEquals (0, violations.get ());
+        assertEquals (0, counter.backlog ());
+    }
+
+    @Test
+    public void scheduledOnlyWhenMessagesArrive () {
+        final List<Runnable> queued = new ArrayList<> ();
+        final List<String> received = new ArrayList<> ();
+        final Actor<String> actor = new Actor<String> (new Executor () {
+            @Override public void execute (final Runnable command) {
+                queued.add (command);
+            }
+        }, Actor.DEFAULT_BATCH_SIZE) {
+            @Override protected void onMessage (final String message) {
+                received.add (message);
+            }
+        };
+
+        assertEquals (0, queued.size ());
+
+        actor.tell ("a");
+        actor.tell ("b");
+        assertEquals ("one slice for the whole mailbox", 1, queued.size ());
+        assertEquals (2, actor.backlog ());
+
+        queued.remove (0).run ();
+        assertEquals ("a", received.get (0));
+        assertEquals ("b", received.get (1));
+        assertEquals ("idle actor is not rescheduled", 0, queued.size ());
+
+        actor.tell ("c");
+        assertEquals (1, queued.size ());
+    }
+
+    @Test
+    public void yieldsAfterBatch () {
+        final List<Runnable> queued = new ArrayList<> ();
+        final AtomicInteger received = new AtomicInteger ();
+        final Actor<Integer> actor = new Actor<Integer> (new Executor () {
+            @Override public void execute (final Runnable command) {
+                queued.add (command);
+            }
+        }, 3) {
+            @Override protected void onMessage (final Integer message) {
+                received.incrementAndGet ();
+            }
+        };
+
+        for (int i = 0; i < 7; i++)
+            actor.tell (i);
+
+        queued.remove (0).run ();
+        assertEquals (3, received.get ());
+        assertEquals ("rescheduled behind other work", 1, queued.size ());
+
+        queued.remove (0).run ();
+        queued.remove (0).run ();
+        assertEquals (7, received.get ());
+        assertEquals (0, queued.size ());
+    }
+
+    @Test
+    public void actorsShareThreadsFairly () throws InterruptedException {
+        final ExecutorService single = Executors.newSingleThreadExecutor ();
+        final CountDownLatch gate = new CountDownLatch (1);
+        final List<String> log = new ArrayList<> ();
+        final CountDownLatch done = new CountDownLatch (20);
+
+        // hold the thread until both actors have a backlog
+        single.execute (new Runnable () {
+            @Override public void run () {
+                try {
+                    gate.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        final Actor<String> first = logger (single, log, done);
+        final Actor<String> second = logger (single, log, done);
+
+        for (int i = 0; i < 10; i++) {
+            first.tell ("a");
+            second.tell ("b");
+        }
+
+        gate.countDown ();
+        assertTrue (done.await (1, TimeUnit.SECONDS));
+        single.shutdown ();
+
+        // batches of 5 interleave
+        assertEquals ("aaaaabbbbbaaaaabbbbb", join (log));
+    }
+
+    @Test
+    public void failingMessageDoesNotStallActor () throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch (1);
+        final Actor<String> actor = new Actor<String> (pool, Actor.DEFAULT_BATCH_SIZE) {
+            @Override protected void onMessage (final String message) {
+                if ("boom".equals (message))
+                    throw new IllegalStateException ("test");
+
+                done.countDown ();
+            }
+        };
+
+        actor.tell ("boom");
+        actor.tell ("ok");
+
+        assertTrue (done.await (1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void invalidBatchSize () {
+        try {
+            new Actor<String> (0) {
+                @Override protected void onMessage (final String message) {
+                }
+            };
+            fail ("batch size must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static Actor<String> logger (final Executor executor, final List<String> log, final CountDownLatch done) {
+        return new Actor<String> (executor, 5) {
+            @Override protected void onMessage (final String message) {
+                // single threaded pool: no need to synchronize
+                log.add (message);
+                done.countDown ();
+            }
+        };
+    }
+
+    private static String join (final List<String> parts) {
+        final StringBuilder builder = new StringBuilder ();
+
+        for (final String part : parts)
+            builder.append (part);
+
+        return builder.toString ();
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.promise.AbstractPromise;
+import com.airg.android.async.promise.FuturePromise;
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.SimplePromise;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class BackgroundExecutorTests {
+    private final List<String> order = Collections.synchronizedList (new ArrayList<String> ());
+    private final CountDownLatch gate = new CountDownLatch (1);
+
+    private BackgroundExecutor executor;
+
+    @Before
+    public void setUp () {
+        order.clear ();
+    }
+
+    @After
+    public void tearDown () throws InterruptedException {
+        gate.countDown ();
+        executor.shutdown ();
+        executor.awaitTermination (1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void higherPriorityRunsFirst () throws Exception {
+        executor = blockedExecutor (0);
+
+        executor.execute (recorder (Prioritized.PRIORITY_LOW, "low"));
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "normal"));
+        executor.execute (recorder (Prioritized.PRIORITY_HIGH, "high"));
+
+        assertEquals (Arrays.asList ("high", "normal", "low"), drain (3));
+    }
+
+    @Test
+    public void samePriorityRunsInSubmissionOrder () throws Exception {
+        executor = blockedExecutor (0);
+
+        for (int i = 0; i < 5; i++)
+            executor.execute (recorder (Prioritized.PRIORITY_HIGH, "task" + i));
+
+        assertEquals (Arrays.asList ("task0", "task1", "task2", "task3", "task4"), drain (5));
+    }
+
+    @Test
+    public void plainRunnablesUseNormalPriority () throws Exception {
+        executor = blockedExecutor (0);
+
+        executor.execute (recorder (Prioritized.PRIORITY_LOW, "low"));
+        executor.execute (new Runnable () {
+            @Override public void run () {
+                order.add ("plain");
+            }
+        });
+        executor.execute (recorder (Prioritized.PRIORITY_HIGH, "high"));
+
+        assertEquals (Arrays.asList ("high", "plain", "low"), drain (3));
+    }
+
+    @Test
+    public void agedTaskOvertakesNewerHigherPriority () throws Exception {
+        final long agingMillis = 50;
+        executor = blockedExecutor (agingMillis);
+
+        executor.execute (recorder (Prioritized.PRIORITY_LOW, "old low"));
+        Thread.sleep (agingMillis * 3);
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "new normal"));
+
+        assertEquals (Arrays.asList ("old low", "new normal"), drain (2));
+    }
+
+    @Test
+    public void dropNewestCancelsRejectedPromise () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.DROP_NEWEST);
+
+        final FuturePromise<Void> queued = recorder (Prioritized.PRIORITY_NORMAL, "queued");
+        final FuturePromise<Void> dropped = recorder (Prioritized.PRIORITY_NORMAL, "dropped");
+        final AtomicBoolean cancelNotified = new AtomicBoolean ();
+        dropped.onCancel (new Promise.OnCancelListener () {
+            @Override public void onCancelled () {
+                cancelNotified.set (true);
+            }
+        });
+
+        executor.execute (queued);
+        executor.execute (dropped);
+
+        assertTrue ("Dropped task should be cancelled", dropped.isCancelled ());
+        assertTrue ("Cancellation should be reported", cancelNotified.get ());
+        assertEquals (Arrays.asList ("queued"), drain (1));
+    }
+
+    @Test
+    public void removeTakesSubmittedTaskOffTheQueue () throws Exception {
+        executor = blockedExecutor (0, 2, BackpressurePolicy.FAIL);
+
+        final FuturePromise<Void> removed = recorder (Prioritized.PRIORITY_NORMAL, "removed");
+        final FuturePromise<Void> kept = recorder (Prioritized.PRIORITY_NORMAL, "kept");
+
+        executor.execute (removed);
+        executor.execute (kept);
+
+        assertTrue ("Queued task should be removed", executor.remove (removed));
+        assertFalse ("Task can only be removed once", executor.remove (removed));
+        assertEquals ("Removal should free up capacity", 1, executor.getQueue ().remainingCapacity ());
+        assertEquals (Arrays.asList ("kept"), drain (1));
+    }
+
+    @Test
+    public void dropOldestMakesRoomForNewTask () throws Exception {
+        executor = blockedExecutor (0, 2, BackpressurePolicy.DROP_OLDEST);
+
+        final FuturePromise<Void> oldest = recorder (Prioritized.PRIORITY_HIGH, "oldest");
+        executor.execute (oldest);
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "middle"));
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "newest"));
+
+        assertTrue ("Oldest task should be cancelled", oldest.isCancelled ());
+        assertEquals (Arrays.asList ("middle", "newest"), drain (2));
+    }
+
+    @Test
+    public void cancelledTasksArePurgedBeforeDroppingLiveOnes () throws Exception {
+        executor = blockedExecutor (0, 2, BackpressurePolicy.DROP_OLDEST);
+
+        final FuturePromise<Void> live = recorder (Prioritized.PRIORITY_NORMAL, "live");
+        final FuturePromise<Void> cancelled = recorder (Prioritized.PRIORITY_NORMAL, "cancelled");
+        executor.execute (live);
+        executor.execute (cancelled);
+        cancelled.cancel (false);
+
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "newest"));
+
+        assertFalse ("Live task should be kept", live.isCancelled ());
+        assertEquals (Arrays.asList ("live", "newest"), drain (2));
+    }
+
+    @Test
+    public void cancelledTasksDontBlockProducers () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.BLOCK);
+
+        final FuturePromise<Void> cancelled = recorder (Prioritized.PRIORITY_NORMAL, "cancelled");
+        executor.execute (cancelled);
+        cancelled.cancel (false);
+
+        // would wait for the blocked worker if the cancelled task still held its slot
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "next"));
+
+        assertEquals (Arrays.asList ("next"), drain (1));
+    }
+
+    @Test
+    public void dropNewestCancelsAbstractPromise () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.DROP_NEWEST);
+
+        final AbstractPromise<Void> dropped = abstractRecorder ("dropped");
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        executor.execute (dropped);
+
+        assertTrue ("Dropped task should be cancelled", dropped.isCancelled ());
+        assertEquals (Arrays.asList ("queued"), drain (1));
+    }
+
+    @Test
+    public void failPolicyFailsAbstractPromise () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.FAIL);
+
+        final AbstractPromise<Void> rejected = abstractRecorder ("rejected");
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        executor.execute (rejected);
+
+        assertTrue ("Rejected task should be failed", rejected.isFailed ());
+    }
+
+    @Test
+    public void droppedPromiseDispatchStillDelivers () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.DROP_NEWEST);
+
+        final SimplePromise<String> promise = new SimplePromise<> (executor);
+        final AtomicReference<String> delivered = new AtomicReference<> ();
+        promise.onComplete (new Promise.OnCompleteListener<String> () {
+            @Override public void onComplete (final String result) {
+                delivered.set (result);
+            }
+        });
+
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        promise.success ("done");
+
+        assertEquals ("done", delivered.get ());
+    }
+
+    @Test
+    public void shutdownNowGivesPermitsBackOnce () throws Exception {
+        executor = blockedExecutor (0, 4, BackpressurePolicy.FAIL);
+
+        for (int i = 0; i < 3; i++)
+            executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "task" + i));
+
+        assertEquals (1, executor.getQueue ().remainingCapacity ());
+        assertEquals (3, executor.shutdownNow ().size ());
+        assertEquals (4, executor.getQueue ().remainingCapacity ());
+    }
+
+    @Test
+    public void callerRunsOverflowTask () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.CALLER_RUNS);
+
+        final AtomicReference<Thread> runner = new AtomicReference<> ();
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        executor.execute (new Runnable () {
+            @Override public void run () {
+                runner.set (Thread.currentThread ());
+            }
+        });
+
+        assertSame ("Overflow should run on the submitting thread", Thread.currentThread (), runner.get ());
+    }
+
+    @Test
+    public void failPolicyFailsPromise () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.FAIL);
+
+        final FuturePromise<Void> rejected = recorder (Prioritized.PRIORITY_NORMAL, "rejected");
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        executor.execute (rejected);
+
+        assertTrue ("Rejected task should be failed", rejected.isFailed ());
+        assertFalse ("Rejected task should not be cancelled", rejected.isCancelled ());
+    }
+
+    @Test (expected = RejectedExecutionException.class)
+    public void failPolicyThrowsForPlainRunnable () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.FAIL);
+
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "queued"));
+        executor.execute (new Runnable () {
+            @Override public void run () {
+            }
+        });
+    }
+
+    @Test
+    public void blockWaitsForRoom () throws Exception {
+        executor = blockedExecutor (0, 1, BackpressurePolicy.BLOCK);
+        executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "first"));
+
+        final CountDownLatch submitted = new CountDownLatch (1);
+        new Thread (new Runnable () {
+            @Override public void run () {
+                executor.execute (recorder (Prioritized.PRIORITY_NORMAL, "second"));
+                submitted.countDown ();
+            }
+        }).start ();
+
+        assertFalse ("Producer should be blocked while the queue is full",
+                     submitted.await (100, TimeUnit.MILLISECONDS));
+        assertEquals (Arrays.asList ("first", "second"), drain (2));
+        assertTrue (submitted.await (1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void adaptivePoolGrowsForBlockingWork () throws Exception {
+        final PoolSizer sizer = new PoolSizer (1, 4, 1, TimeUnit.MILLISECONDS.toNanos (50));
+        executor = new BackgroundExecutor (1, new CPUWorkerThreadFactory (), 0, TaskQueue.UNBOUNDED,
+                                           BackpressurePolicy.FAIL, sizer);
+
+        final CountDownLatch done = new CountDownLatch (40);
+        for (int i = 0; i < 40; i++)
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    try {
+                        Thread.sleep (20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread ().interrupt ();
+                    }
+
+                    done.countDown ();
+                }
+            });
+
+        assertTrue (done.await (5, TimeUnit.SECONDS));
+        assertTrue ("Pool should have grown for tasks that mostly wait", executor.getCorePoolSize () > 1);
+        assertTrue ("Pool should not exceed its upper bound", executor.getCorePoolSize () <= 4);
+    }
+
+    @Test
+    public void adaptivePoolShrinksForCpuBoundWork () throws Exception {
+        // pretend there is one core: four spinning workers saturate it, however many cores there really are
+        final PoolSizer sizer = new PoolSizer (1, 4, 1, TimeUnit.MILLISECONDS.toNanos (50));
+        executor = new BackgroundExecutor (4, new CPUWorkerThreadFactory (), 0, TaskQueue.UNBOUNDED,
+                                           BackpressurePolicy.FAIL, sizer);
+
+        final CountDownLatch done = new CountDownLatch (60);
+        for (int i = 0; i < 60; i++)
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    final long end = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos (20);
+
+                    while (System.nanoTime () < end) {
+                        // spin
+                    }
+
+                    done.countDown ();
+                }
+            });
+
+        assertTrue (done.await (10, TimeUnit.SECONDS));
+        assertEquals ("Waiting for a core is not blocking", 1, executor.getCorePoolSize ());
+    }
+
+    private BackgroundExecutor blockedExecutor (final long agingMillis) throws InterruptedException {
+        return blockedExecutor (agingMillis, TaskQueue.UNBOUNDED, BackpressurePolicy.FAIL);
+    }
+
+    /**
+     Creates a single thread executor whose only worker is blocked until {@link #drain(int)} is called, so every task
+     submitted in between ends up in the queue
+     */
+    private BackgroundExecutor blockedExecutor (final long agingMillis, final int capacity,
+                                                final BackpressurePolicy policy) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch (1);
+        final BackgroundExecutor executor = new BackgroundExecutor (1, new CPUWorkerThreadFactory (), agingMillis,
+                                                                    capacity, policy);
+
+        executor.execute (new Runnable () {
+            @Override public void run () {
+                started.countDown ();
+
+                try {
+                    gate.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        assertTrue (started.await (1, TimeUnit.SECONDS));
+        return executor;
+    }
+
+    private List<String> drain (final int expected) throws InterruptedException {
+        gate.countDown ();
+
+        final long deadline = System.currentTimeMillis () + 1000;
+        while (order.size () < expected && System.currentTimeMillis () < deadline)
+            Thread.sleep (10);
+
+        return new ArrayList<> (order);
+    }
+
+    private AbstractPromise<Void> abstractRecorder (final String name) {
+        return new AbstractPromise<Void> () {
+            @Override protected Void result () {
+                order.add (name);
+                return null;
+            }
+        };
+    }
+
+    private FuturePromise<Void> recorder (final int priority, final String name) {
+        return new FuturePromise<> (priority, new Callable<Void> () {
+            @Override public Void call () {
+                order.add (name);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.os.Build;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.airg.android.device.ApiLevel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ Measures how long it takes a task submitted to the foreground executor from a background thread to start running
+ while the UI is busy with layout (see {@link LayoutLoadActivity}), with ordinary and with asynchronous messages.
+ Results are written to logcat under the <code>FgLatencyBench</code> tag.
+ */
+@RunWith (AndroidJUnit4.class)
+@LargeTest
+public class ForegroundLatencyBenchmark {
+    private static final String TAG     = "FgLatencyBench";
+    private static final int    SAMPLES = 300;
+
+    @Rule
+    public final ActivityTestRule<LayoutLoadActivity> activity = new ActivityTestRule<> (LayoutLoadActivity.class);
+
+    private final Random random = new Random (42);
+
+    @Test
+    public void deliveryLatency () throws Exception {
+        assumeTrue ("Asynchronous messages require API 22", ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP_MR1));
+
+        final UIThreadExecutor sync = new UIThreadExecutor (false, UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS, false);
+        final UIThreadExecutor async = new UIThreadExecutor (false, UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS, true);
+
+        // warm up
+        measure (sync, SAMPLES / 10);
+        measure (async, SAMPLES / 10);
+
+        report ("sync ", measure (sync, SAMPLES));
+        report ("async", measure (async, SAMPLES));
+    }
+
+    /**
+     Submits one task at a time, at random points of the frame, and returns the submit-to-run delays in nanoseconds
+     */
+    private long[] measure (final UIThreadExecutor executor, final int samples) throws InterruptedException {
+        final long[] latencies = new long[samples];
+
+        for (int i = 0; i < samples; i++) {
+            final int sample = i;
+            final CountDownLatch ran = new CountDownLatch (1);
+            final long start = System.nanoTime ();
+
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    latencies[sample] = System.nanoTime () - start;
+                    ran.countDown ();
+                }
+            });
+
+            assertTrue (ran.await (1, TimeUnit.SECONDS));
+            Thread.sleep (random.nextInt (17));
+        }
+
+        return latencies;
+    }
+
+    private static void report (final String label, final long[] latencies) {
+        Arrays.sort (latencies);
+
+        long total = 0;
+        for (final long latency : latencies)
+            total += latency;
+
+        Log.i (TAG, String.format (Locale.ENGLISH, "%s: mean %6d us, p50 %6d us, p95 %6d us, max %6d us", label,
+                                   total / latencies.length / 1000,
+                                   latencies[latencies.length / 2] / 1000,
+                                   latencies[latencies.length * 95 / 100] / 1000,
+                                   latencies[latencies.length - 1] / 1000));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ An activity that keeps the main thread busy with layout: every frame requests a new layout pass, and every measure
+ pass takes {@link #LAYOUT_COST_MS}. A layout traversal is pending nearly all the time, just like in a busy UI.
+ */
+public class LayoutLoadActivity
+  extends Activity {
+    static final long LAYOUT_COST_MS = 12;
+
+    private View    content;
+    private boolean destroyed;
+
+    private final Choreographer.FrameCallback relayout = new Choreographer.FrameCallback () {
+        @Override public void doFrame (final long frameTimeNanos) {
+            if (destroyed)
+                return;
+
+            content.requestLayout ();
+            Choreographer.getInstance ().postFrameCallback (this);
+        }
+    };
+
+    @Override protected void onCreate (final Bundle savedInstanceState) {
+        super.onCreate (savedInstanceState);
+
+        content = new HeavyView (this);
+        setContentView (content);
+        Choreographer.getInstance ().postFrameCallback (relayout);
+    }
+
+    @Override protected void onDestroy () {
+        destroyed = true;
+        super.onDestroy ();
+    }
+
+    private static final class HeavyView
+      extends View {
+        HeavyView (final Context context) {
+            super (context);
+        }
+
+        @Override protected void onMeasure (final int widthMeasureSpec, final int heightMeasureSpec) {
+            final long end = System.nanoTime () + LAYOUT_COST_MS * 1000000L;
+
+            //noinspection StatementWithEmptyBody
+            while (System.nanoTime () < end) ;
+
+            setMeasuredDimension (getDefaultSize (getSuggestedMinimumWidth (), widthMeasureSpec),
+                                  getDefaultSize (getSuggestedMinimumHeight (), heightMeasureSpec));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.promise.Promise;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class ParallelMapTests {
+    private final ExecutorService pool = Executors.newFixedThreadPool (4);
+
+    private static final Promise.Transform<Integer, Integer> SQUARE = new Promise.Transform<Integer, Integer> () {
+        @Override public Integer apply (final Integer input) {
+            return input * input;
+        }
+    };
+
+    @After
+    public void tearDown () {
+        pool.shutdownNow ();
+    }
+
+    @Test
+    public void mapKeepsListOrder () throws Exception {
+        final List<Integer> results = ThreadPool.parallelMap (numbers (10000), SQUARE).await (5, TimeUnit.SECONDS);
+
+        assertEquals (10000, results.size ());
+
+        for (int i = 0; i < results.size (); i++)
+            assertEquals (i * i, (int) results.get (i));
+    }
+
+    @Test
+    public void smallInputStaysOnCaller () {
+        final Thread caller = Thread.currentThread ();
+        final AtomicInteger elsewhere = new AtomicInteger ();
+
+        final Promise.Transform<Integer, Integer> identity = new Promise.Transform<Integer, Integer> () {
+            @Override public Integer apply (final Integer input) {
+                if (Thread.currentThread () != caller)
+                    elsewhere.incrementAndGet ();
+
+                return input;
+            }
+        };
+
+        final Promise<List<Integer>> promise = ThreadPool.parallelMap (numbers (16), identity);
+
+        assertTrue ("done before returning", promise.succeeded ());
+        assertEquals (0, elsewhere.get ());
+        assertEquals (numbers (16), promise.getNow (null));
+    }
+
+    @Test
+    public void emptyInputSucceeds () {
+        assertEquals (Collections.<Integer>emptyList (),
+                      ThreadPool.parallelMap (new ArrayList<Integer> (), SQUARE).getNow (null));
+    }
+
+    @Test
+    public void oneTaskPerThreadNotPerItem () throws Exception {
+        final AtomicInteger submitted = new AtomicInteger ();
+        final Executor counting = new Executor () {
+            @Override public void execute (final Runnable command) {
+                submitted.incrementAndGet ();
+                pool.execute (command);
+            }
+        };
+        final Set<Thread> threads = Collections.newSetFromMap (new ConcurrentHashMap<Thread, Boolean> ());
+
+        final Promise<List<Integer>> promise = new ParallelTask.Map<Integer, Integer> (
+          numbers (1000), 1, new Promise.Transform<Integer, Integer> () {
+            @Override public Integer apply (final Integer input) throws Exception {
+                threads.add (Thread.currentThread ());
+                Thread.sleep (1);
+                return input;
+            }
+        }).start (counting, 4);
+
+        assertEquals (numbers (1000), promise.await (5, TimeUnit.SECONDS));
+        assertEquals (4, submitted.get ());
+        assertTrue ("work is spread across the pool", threads.size () > 1);
+    }
+
+    @Test
+    public void failureStopsRemainingItems () throws InterruptedException {
+        final RuntimeException cause = new RuntimeException ("test");
+        final AtomicInteger processed = new AtomicInteger ();
+
+        final Promise<Void> promise = new ParallelTask.ForEach<Integer> (
+          numbers (10000), 16, new ThreadPool.Action<Integer> () {
+            @Override public void apply (final Integer item) {
+                processed.incrementAndGet ();
+
+                if (item == 100)
+                    throw cause;
+            }
+        }).start (pool, 4);
+
+        try {
+            promise.await (5, TimeUnit.SECONDS);
+            fail ("should have failed");
+        } catch (ExecutionException e) {
+            assertSame (cause, e.getCause ());
+        } catch (Exception e) {
+            throw new AssertionError (e);
+        }
+
+        Thread.sleep (50);
+        assertTrue ("remaining items were skipped", processed.get () < 10000);
+    }
+
+    @Test
+    public void cancelSkipsRemainingItems () throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch (1);
+        final CountDownLatch gate = new CountDownLatch (1);
+        final AtomicInteger processed = new AtomicInteger ();
+
+        final Promise<Void> promise = ThreadPool.parallelForEach (numbers (1000), 1, new ThreadPool.Action<Integer> () {
+            @Override public void apply (final Integer item) throws Exception {
+                processed.incrementAndGet ();
+                started.countDown ();
+                gate.await ();
+            }
+        });
+
+        assertTrue (started.await (1, TimeUnit.SECONDS));
+        promise.cancel ();
+        gate.countDown ();
+
+        Thread.sleep (50);
+        assertTrue (promise.isCancelled ());
+        assertTrue ("remaining items were skipped", processed.get () < 100);
+    }
+
+    @Test
+    public void forEachVisitsEveryItemOnce () throws Exception {
+        final int[] visits = new int[5000];
+
+        ThreadPool.parallelForEach (numbers (visits.length), new ThreadPool.Action<Integer> () {
+            @Override public void apply (final Integer item) {
+                // each index belongs to one item
+                visits[item]++;
+            }
+        }).await (5, TimeUnit.SECONDS);
+
+        for (final int count : visits)
+            assertEquals (1, count);
+    }
+
+    @Test
+    public void droppedRunnersFailThePromise () throws Exception {
+        final CountDownLatch gate = new CountDownLatch (1);
+        final BackgroundExecutor saturated = blockedPool (1, gate);
+
+        try {
+            saturated.execute (new Runnable () {
+                @Override public void run () {
+                }
+            });
+
+            final Promise<List<Integer>> promise = new ParallelTask.Map<Integer, Integer> (numbers (1000), 1, SQUARE)
+              .start (saturated, 4);
+
+            try {
+                promise.await (1, TimeUnit.SECONDS);
+                fail ("should have failed");
+            } catch (ExecutionException e) {
+                assertTrue (e.getCause () instanceof RejectedExecutionException);
+            }
+        } finally {
+            gate.countDown ();
+            saturated.shutdown ();
+        }
+    }
+
+    @Test
+    public void oneQueuedRunnerDoesAllTheWork () throws Exception {
+        final CountDownLatch gate = new CountDownLatch (1);
+        final BackgroundExecutor saturated = blockedPool (1, gate);
+
+        try {
+            // room for one runner, the others are dropped
+            final Promise<List<Integer>> promise = new ParallelTask.Map<Integer, Integer> (numbers (1000), 1, SQUARE)
+              .start (saturated, 4);
+
+            gate.countDown ();
+            assertEquals (1000, promise.await (5, TimeUnit.SECONDS).size ());
+        } finally {
+            saturated.shutdown ();
+        }
+    }
+
+    /**
+     Single worker pool that drops what doesn't fit in its queue. The worker is blocked until <code>gate</code> opens.
+     */
+    private static BackgroundExecutor blockedPool (final int capacity, final CountDownLatch gate)
+      throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch (1);
+        final BackgroundExecutor executor = new BackgroundExecutor (1, new CPUWorkerThreadFactory (), 0, capacity,
+                                                                    BackpressurePolicy.DROP_NEWEST);
+
+        executor.execute (new Runnable () {
+            @Override public void run () {
+                started.countDown ();
+
+                try {
+                    gate.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        assertTrue (started.await (1, TimeUnit.SECONDS));
+        return executor;
+    }
+
+    private static List<Integer> numbers (final int count) {
+        final List<Integer> list = new ArrayList<> (count);
+
+        for (int i = 0; i < count; i++)
+            list.add (i);
+
+        return list;
+    }
+}
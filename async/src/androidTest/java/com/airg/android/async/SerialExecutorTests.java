@@ -0,0 +1,361 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class SerialExecutorTests {
+    @Test
+    public void runsInSubmissionOrderWithoutOverlap () throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool (4);
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final int count = 1000;
+        final List<Integer> order = Collections.synchronizedList (new ArrayList<Integer> ());
+        final AtomicInteger running = new AtomicInteger ();
+        final CountDownLatch done = new CountDownLatch (count);
+
+        for (int i = 0; i < count; i++) {
+            final int n = i;
+
+            strand.execute (new Runnable () {
+                @Override public void run () {
+                    assertEquals ("tasks overlap", 1, running.incrementAndGet ());
+                    order.add (n);
+                    running.decrementAndGet ();
+                    done.countDown ();
+                }
+            });
+        }
+
+        assertTrue (done.await (5, TimeUnit.SECONDS));
+        pool.shutdown ();
+
+        for (int i = 0; i < count; i++)
+            assertEquals (i, (int) order.get (i));
+    }
+
+    @Test
+    public void concurrentProducersNeverOverlap () throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool (4);
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final int producers = 8;
+        final int perProducer = 500;
+        final AtomicInteger running = new AtomicInteger ();
+        final AtomicInteger overlaps = new AtomicInteger ();
+        final CountDownLatch done = new CountDownLatch (producers * perProducer);
+        final int[] lastSeen = new int[producers];
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            lastSeen[p] = -1;
+
+            new Thread (new Runnable () {
+                @Override public void run () {
+                    for (int i = 0; i < perProducer; i++) {
+                        final int n = i;
+
+                        strand.execute (new Runnable () {
+                            @Override public void run () {
+                                if (1 != running.incrementAndGet ())
+                                    overlaps.incrementAndGet ();
+
+                                // each producer's tasks keep their order. Plain array: the strand orders access.
+                                if (lastSeen[producer] != n - 1)
+                                    overlaps.incrementAndGet ();
+
+                                lastSeen[producer] = n;
+                                running.decrementAndGet ();
+                                done.countDown ();
+                            }
+                        });
+                    }
+                }
+            }).start ();
+        }
+
+        assertTrue (done.await (5, TimeUnit.SECONDS));
+        pool.shutdown ();
+        assertEquals (0, overlaps.get ());
+    }
+
+    @Test
+    public void strandsShareThePool () throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool (2);
+        final int strands = 100;
+        final CountDownLatch done = new CountDownLatch (strands * 10);
+        final AtomicInteger threads = new AtomicInteger ();
+
+        for (int s = 0; s < strands; s++) {
+            final SerialExecutor strand = ThreadPool.serial (pool);
+
+            for (int i = 0; i < 10; i++)
+                strand.execute (new Runnable () {
+                    @Override public void run () {
+                        done.countDown ();
+                    }
+                });
+        }
+
+        assertTrue (done.await (5, TimeUnit.SECONDS));
+        pool.shutdown ();
+        assertTrue (pool.awaitTermination (1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void longBacklogYieldsThePool () throws InterruptedException {
+        final ExecutorService pool = Executors.newSingleThreadExecutor ();
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final AtomicInteger ran = new AtomicInteger ();
+        final CountDownLatch gate = new CountDownLatch (1);
+        final CountDownLatch other = new CountDownLatch (1);
+        final int[] strandRunsBeforeOther = new int[1];
+
+        pool.execute (new Runnable () {
+            @Override public void run () {
+                try {
+                    gate.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        for (int i = 0; i < SerialExecutor.BATCH_SIZE * 3; i++)
+            strand.execute (new Runnable () {
+                @Override public void run () {
+                    ran.incrementAndGet ();
+                }
+            });
+
+        pool.execute (new Runnable () {
+            @Override public void run () {
+                strandRunsBeforeOther[0] = ran.get ();
+                other.countDown ();
+            }
+        });
+
+        gate.countDown ();
+
+        assertTrue (other.await (1, TimeUnit.SECONDS));
+        assertEquals (SerialExecutor.BATCH_SIZE, strandRunsBeforeOther[0]);
+        pool.shutdown ();
+    }
+
+    @Test
+    public void failingTaskDoesNotStallStrand () throws InterruptedException {
+        final ExecutorService pool = Executors.newSingleThreadExecutor ();
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final CountDownLatch done = new CountDownLatch (1);
+
+        strand.execute (new Runnable () {
+            @Override public void run () {
+                throw new IllegalStateException ("test");
+            }
+        });
+
+        strand.execute (new Runnable () {
+            @Override public void run () {
+                done.countDown ();
+            }
+        });
+
+        assertTrue (done.await (1, TimeUnit.SECONDS));
+        pool.shutdown ();
+    }
+
+    @Test
+    public void removedTaskNeverRuns () throws InterruptedException {
+        final List<Runnable> queued = new ArrayList<> ();
+        final SerialExecutor strand = ThreadPool.serial (new Executor () {
+            @Override public void execute (final Runnable command) {
+                queued.add (command);
+            }
+        });
+        final AtomicInteger ran = new AtomicInteger ();
+        final Runnable task = new Runnable () {
+            @Override public void run () {
+                ran.incrementAndGet ();
+            }
+        };
+
+        strand.execute (task);
+        strand.execute (task);
+        assertEquals ("one drain for the whole strand", 1, queued.size ());
+        assertEquals (2, strand.size ());
+
+        assertTrue (strand.remove (task));
+        queued.get (0).run ();
+
+        assertEquals (1, ran.get ());
+        assertEquals (0, strand.size ());
+    }
+
+    @Test
+    public void rejectedTaskIsNotQueued () {
+        final SerialExecutor strand = ThreadPool.serial (new Executor () {
+            @Override public void execute (final Runnable command) {
+                throw new RejectedExecutionException ();
+            }
+        });
+
+        try {
+            strand.execute (new Runnable () {
+                @Override public void run () {
+                    fail ("rejected task ran");
+                }
+            });
+            fail ("rejection should be passed on");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals (0, strand.size ());
+        assertFalse (strand.remove (null));
+    }
+
+    @Test
+    public void drainDroppedBySaturatedPoolIsReported () throws InterruptedException {
+        final CountDownLatch gate = new CountDownLatch (1);
+        final BackgroundExecutor pool = saturatedPool (BackpressurePolicy.DROP_NEWEST, gate);
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final CountDownLatch done = new CountDownLatch (1);
+
+        try {
+            strand.execute (new Runnable () {
+                @Override public void run () {
+                    fail ("dropped task ran");
+                }
+            });
+            fail ("drop should be reported");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals (0, strand.size ());
+        gate.countDown ();
+
+        // the strand went back to idle instead of waiting on a drain that will never run
+        final long deadline = System.currentTimeMillis () + 1000;
+        while (pool.getQueue ().size () > 0 && System.currentTimeMillis () < deadline)
+            Thread.sleep (10);
+
+        strand.execute (new Runnable () {
+            @Override public void run () {
+                done.countDown ();
+            }
+        });
+
+        assertTrue (done.await (1, TimeUnit.SECONDS));
+        pool.shutdown ();
+    }
+
+    @Test
+    public void strandEvictedFromSaturatedPoolResumes () throws InterruptedException {
+        final CountDownLatch gate = new CountDownLatch (1);
+        final BackgroundExecutor pool = saturatedPool (BackpressurePolicy.DROP_OLDEST, gate);
+        final SerialExecutor strand = ThreadPool.serial (pool);
+        final List<String> order = Collections.synchronizedList (new ArrayList<String> ());
+        final CountDownLatch done = new CountDownLatch (2);
+
+        // evicts the filler task
+        strand.execute (recorder (order, "first", done));
+
+        // evicts the strand
+        pool.execute (new Runnable () {
+            @Override public void run () {
+            }
+        });
+
+        assertEquals ("evicted strand keeps its tasks", 1, strand.size ());
+        gate.countDown ();
+
+        final long deadline = System.currentTimeMillis () + 1000;
+        while (pool.getQueue ().size () > 0 && System.currentTimeMillis () < deadline)
+            Thread.sleep (10);
+
+        strand.execute (recorder (order, "second", done));
+
+        assertTrue (done.await (1, TimeUnit.SECONDS));
+        assertEquals (Arrays.asList ("first", "second"), order);
+        pool.shutdown ();
+    }
+
+    private static Runnable recorder (final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable () {
+            @Override public void run () {
+                order.add (name);
+                done.countDown ();
+            }
+        };
+    }
+
+    /**
+     Single worker pool with room for one queued task. The worker is blocked until <code>gate</code> opens and the
+     queue is full.
+     */
+    private static BackgroundExecutor saturatedPool (final BackpressurePolicy policy, final CountDownLatch gate)
+      throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch (1);
+        final BackgroundExecutor pool = new BackgroundExecutor (1, new CPUWorkerThreadFactory (), 0, 1, policy);
+
+        pool.execute (new Runnable () {
+            @Override public void run () {
+                started.countDown ();
+
+                try {
+                    gate.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        assertTrue (started.await (1, TimeUnit.SECONDS));
+
+        pool.execute (new Runnable () {
+            @Override public void run () {
+            }
+        });
+
+        return pool;
+    }
+}
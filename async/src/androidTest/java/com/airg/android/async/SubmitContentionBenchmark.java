@@ -0,0 +1,101 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ Measures {@link ThreadPool#bg(Runnable)} submission throughput as the number of producer threads grows. Results are
+ written to logcat under the <code>SubmitBench</code> tag.
+ */
+@RunWith (AndroidJUnit4.class)
+@LargeTest
+public class SubmitContentionBenchmark {
+    private static final String TAG               = "SubmitBench";
+    private static final int    TASKS_PER_PRODUCER = 20000;
+    private static final int[]  PRODUCERS          = {1, 2, 4, 8, 16};
+
+    @Test
+    public void submitThroughput () throws Exception {
+        // warm up: creates the pool and gets the submission path compiled
+        runRound (2);
+
+        for (final int producers : PRODUCERS) {
+            final long elapsed = runRound (producers);
+            final long submitted = (long) producers * TASKS_PER_PRODUCER;
+
+            Log.i (TAG, String.format (Locale.ENGLISH, "%2d producers: %8d submits in %6d ms (%.1f submits/ms)",
+                                       producers, submitted, TimeUnit.NANOSECONDS.toMillis (elapsed),
+                                       submitted * 1e6 / elapsed));
+        }
+    }
+
+    /**
+     Runs a single round and returns the time (in nanoseconds) it took all producers to submit their tasks
+     */
+    private long runRound (final int producers) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch (1);
+        final CountDownLatch submitted = new CountDownLatch (producers);
+        final CountDownLatch executed = new CountDownLatch (producers * TASKS_PER_PRODUCER);
+
+        final Runnable task = new Runnable () {
+            @Override public void run () {
+                executed.countDown ();
+            }
+        };
+
+        for (int i = 0; i < producers; i++) {
+            final Thread producer = new Thread (new Runnable () {
+                @Override public void run () {
+                    try {
+                        start.await ();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < TASKS_PER_PRODUCER; j++)
+                        ThreadPool.bg (task);
+
+                    submitted.countDown ();
+                }
+            }, "Producer[" + i + "]");
+            producer.start ();
+        }
+
+        final long begin = System.nanoTime ();
+        start.countDown ();
+        submitted.await ();
+        final long elapsed = System.nanoTime () - begin;
+
+        // let the workers drain the backlog so it doesn't skew the next round
+        assertTrue ("Tasks did not finish executing", executed.await (1, TimeUnit.MINUTES));
+        return elapsed;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.app.Activity;
+import android.support.test.filters.SmallTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.promise.FuturePromise;
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.SimplePromise;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class TaskScopeTests {
+    @Rule
+    public final ActivityTestRule<LayoutLoadActivity> activity = new ActivityTestRule<> (LayoutLoadActivity.class);
+
+    private final CountDownLatch gate  = new CountDownLatch (1);
+    private final TaskScope      scope = new TaskScope ();
+
+    @After
+    public void tearDown () {
+        gate.countDown ();
+        scope.close ();
+    }
+
+    @Test
+    public void closeCancelsEverything () throws Exception {
+        final AtomicInteger started = new AtomicInteger ();
+        final List<FuturePromise<Void>> tasks = new ArrayList<> ();
+
+        // more blocked tasks than the I/O pool has threads: some of them are still queued when the scope closes
+        for (int i = 0; i < 64; i++)
+            tasks.add (scope.io (new Callable<Void> () {
+                @Override public Void call () throws Exception {
+                    started.incrementAndGet ();
+                    gate.await ();
+                    return null;
+                }
+            }));
+
+        final SimplePromise<String> tracked = scope.track (new SimplePromise<String> ());
+
+        scope.close ();
+        gate.countDown ();
+
+        assertTrue (scope.isClosed ());
+        assertTrue (tracked.isCancelled ());
+
+        for (final FuturePromise<Void> task : tasks)
+            assertTrue (task.isCancelled ());
+
+        final int startedBeforeClose = started.get ();
+        Thread.sleep (100);
+        assertEquals ("Queued tasks should never start", startedBeforeClose, started.get ());
+        assertTrue (startedBeforeClose < tasks.size ());
+    }
+
+    @Test
+    public void closeNotifiesCancellationOnly () {
+        final AtomicBoolean completed = new AtomicBoolean ();
+        final AtomicBoolean cancelled = new AtomicBoolean ();
+        final SimplePromise<String> promise = scope.track (new SimplePromise<String> ());
+
+        promise.onComplete (new Promise.OnCompleteListener<String> () {
+            @Override public void onComplete (final String result) {
+                completed.set (true);
+            }
+        }).onCancel (new Promise.OnCancelListener () {
+            @Override public void onCancelled () {
+                cancelled.set (true);
+            }
+        });
+
+        scope.close ();
+        promise.success ("too late");
+
+        assertTrue (cancelled.get ());
+        assertFalse (completed.get ());
+    }
+
+    @Test
+    public void submitAfterCloseIsCancelled () throws Exception {
+        final AtomicBoolean ran = new AtomicBoolean ();
+        scope.close ();
+
+        final FuturePromise<Void> task = scope.bg (new Runnable () {
+            @Override public void run () {
+                ran.set (true);
+            }
+        });
+
+        assertTrue (task.isCancelled ());
+        Thread.sleep (50);
+        assertFalse (ran.get ());
+    }
+
+    @Test
+    public void completedPromisesAreDropped () {
+        for (int i = 0; i < 1000; i++) {
+            final SimplePromise<Integer> promise = scope.track (new SimplePromise<Integer> ());
+            assertEquals (1, scope.size ());
+
+            promise.success (i);
+            assertEquals ("Completed promise should be dropped right away", 0, scope.size ());
+        }
+    }
+
+    @Test
+    public void rejectedTaskFailsAndIsDropped () {
+        final RejectedExecutionException rejection = new RejectedExecutionException ("full");
+        final FuturePromise<Void> task = scope.execute (new FuturePromise<Void> (new Runnable () {
+            @Override public void run () {
+            }
+        }, null), new Executor () {
+            @Override public void execute (final Runnable command) {
+                throw rejection;
+            }
+        });
+
+        final AtomicReference<Throwable> failure = new AtomicReference<> ();
+        task.onFail (new Promise.OnFailListener () {
+            @Override public void onFailed (final Throwable error) {
+                failure.set (error);
+            }
+        });
+
+        assertTrue (task.isFailed ());
+        assertSame (rejection, failure.get ());
+        assertEquals (0, scope.size ());
+    }
+
+    @Test
+    public void trackingDoesNotPinPromise () {
+        final SimplePromise<Integer> source = scope.track (new SimplePromise<Integer> ());
+        final Promise<Integer> derived = source.map (new Promise.Transform<Integer, Integer> () {
+            @Override public Integer apply (final Integer input) {
+                return input;
+            }
+        });
+
+        // nothing but the scope watches the source: cancelling the chain still cancels it
+        derived.cancel ();
+
+        assertTrue (source.isCancelled ());
+        assertEquals (0, scope.size ());
+    }
+
+    @Test
+    public void boundScopeClosesWithActivity () throws Exception {
+        final Activity bound = activity.getActivity ();
+        final TaskScope activityScope = TaskScope.bind (bound);
+        final SimplePromise<String> promise = activityScope.track (new SimplePromise<String> ());
+
+        bound.finish ();
+
+        final long deadline = System.currentTimeMillis () + 5000;
+        while (!activityScope.isClosed () && System.currentTimeMillis () < deadline)
+            Thread.sleep (10);
+
+        assertTrue ("Scope should close when the activity is destroyed", activityScope.isClosed ());
+        assertTrue (promise.isCancelled ());
+    }
+}
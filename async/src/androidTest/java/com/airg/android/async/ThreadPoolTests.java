@@ -0,0 +1,196 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.os.Build;
+import android.os.Process;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.device.ApiLevel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class ThreadPoolTests {
+    // lower than the test thread's, which is all an app is allowed to set
+    private static final int BACKGROUND_NICE = Process.THREAD_PRIORITY_BACKGROUND;
+    private static final int IO_NICE         = Process.THREAD_PRIORITY_LOWEST;
+
+    @Test
+    public void backgroundWorkersUseProcessPriority () throws Exception {
+        final ExecutorService pool = ThreadPool.newCPUExecutor (ThreadPool.Config.builder ()
+                                                                                 .workStealing (false)
+                                                                                 .backgroundProcessPriority (BACKGROUND_NICE)
+                                                                                 .build ());
+
+        try {
+            assertEquals (BACKGROUND_NICE, niceValueOn (pool));
+        } finally {
+            pool.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void workStealingWorkersUseProcessPriority () throws Exception {
+        assumeTrue ("Work-stealing requires API 21", ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP));
+
+        final ExecutorService pool = ThreadPool.newCPUExecutor (ThreadPool.Config.builder ()
+                                                                                 .workStealing (true)
+                                                                                 .backgroundProcessPriority (BACKGROUND_NICE)
+                                                                                 .build ());
+
+        try {
+            assertEquals (BACKGROUND_NICE, niceValueOn (pool));
+        } finally {
+            pool.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void ioWorkersUseTheirOwnProcessPriority () throws Exception {
+        final ThreadPool.Config config = ThreadPool.Config.builder ()
+                                                          .backgroundProcessPriority (BACKGROUND_NICE)
+                                                          .ioProcessPriority (IO_NICE)
+                                                          .build ();
+        final ExecutorService pool = ThreadPool.newIOExecutor (config);
+
+        try {
+            assertEquals (IO_NICE, niceValueOn (pool));
+        } finally {
+            pool.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void ioTasksRunOnTheirOwnThreads () throws Exception {
+        final ThreadPool.Config config = ThreadPool.Config.builder ().workStealing (false).build ();
+        final ExecutorService io = ThreadPool.newIOExecutor (config);
+        final ExecutorService background = ThreadPool.newCPUExecutor (config);
+
+        try {
+            final String ioThread = threadNameOn (io);
+            final String backgroundThread = threadNameOn (background);
+
+            assertTrue (ioThread, ioThread.startsWith ("AsyncIO["));
+            assertTrue (backgroundThread, backgroundThread.startsWith ("AsyncWorker["));
+        } finally {
+            io.shutdownNow ();
+            background.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void ioPoolGrowsToSizeAndShrinksWhenIdle () throws Exception {
+        final int size = 3;
+        final ThreadPoolExecutor io = (ThreadPoolExecutor) ThreadPool.newIOExecutor (ThreadPool.Config.builder ()
+                                                                                                       .ioPoolSize (size)
+                                                                                                       .ioKeepAliveSeconds (1)
+                                                                                                       .build ());
+        final CountDownLatch started = new CountDownLatch (size);
+        final CountDownLatch release = new CountDownLatch (1);
+
+        try {
+            assertEquals (0, io.getPoolSize ());
+
+            // one more blocking task than there are threads: it waits in the queue
+            for (int i = 0; i <= size; i++)
+                io.execute (new Runnable () {
+                    @Override public void run () {
+                        started.countDown ();
+
+                        try {
+                            release.await ();
+                        } catch (InterruptedException ignore) {
+                            // shutting down
+                        }
+                    }
+                });
+
+            assertTrue (started.await (5, TimeUnit.SECONDS));
+            assertEquals (size, io.getPoolSize ());
+            assertEquals (1, io.getQueue ().size ());
+
+            release.countDown ();
+
+            final long giveUp = System.nanoTime () + TimeUnit.SECONDS.toNanos (5);
+            while (io.getPoolSize () > 0 && System.nanoTime () < giveUp)
+                Thread.sleep (50);
+
+            assertEquals (0, io.getPoolSize ());
+            assertEquals (size, io.getLargestPoolSize ());
+        } finally {
+            release.countDown ();
+            io.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void workStealingWorkersUseNameAndPriority () throws Exception {
+        assumeTrue ("Work-stealing requires API 21", ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP));
+
+        final ExecutorService pool = ThreadPool.newCPUExecutor (ThreadPool.Config.builder ()
+                                                                                 .workStealing (true)
+                                                                                 .workerThreadNamePrefix ("Stealer")
+                                                                                 .backgroundThreadPriority (Thread.MIN_PRIORITY)
+                                                                                 .build ());
+
+        try {
+            final Thread worker = pool.submit (new Callable<Thread> () {
+                @Override public Thread call () {
+                    return Thread.currentThread ();
+                }
+            }).get (5, TimeUnit.SECONDS);
+
+            assertTrue (worker.getName (), worker.getName ().startsWith ("Stealer["));
+            assertEquals (Thread.MIN_PRIORITY, worker.getPriority ());
+            assertTrue (worker.isDaemon ());
+        } finally {
+            pool.shutdownNow ();
+        }
+    }
+
+    private static int niceValueOn (final ExecutorService pool) throws Exception {
+        return pool.submit (new Callable<Integer> () {
+            @Override public Integer call () {
+                return Process.getThreadPriority (Process.myTid ());
+            }
+        }).get (5, TimeUnit.SECONDS);
+    }
+
+    private static String threadNameOn (final ExecutorService pool) throws Exception {
+        return pool.submit (new Callable<String> () {
+            @Override public String call () {
+                return Thread.currentThread ().getName ();
+            }
+        }).get (5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.promise.FuturePromise;
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.SimplePromise;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class TimingWheelTests {
+    private final TimingWheel wheel = new TimingWheel (1, TimeUnit.MILLISECONDS, 8, new CPUWorkerThreadFactory ("Timer"));
+
+    @Test
+    public void firesAfterDelay () throws Exception {
+        final CountDownLatch latch = new CountDownLatch (1);
+        final long start = System.nanoTime ();
+
+        final TimingWheel.Timeout timeout = wheel.schedule (countDown (latch), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (50));
+        assertTrue (timeout.isExpired ());
+    }
+
+    @Test
+    public void firesInDeadlineOrder () throws Exception {
+        final List<String> order = Collections.synchronizedList (new ArrayList<String> ());
+        final CountDownLatch latch = new CountDownLatch (3);
+
+        // longer than one revolution of the wheel, so these share buckets
+        wheel.schedule (recorder (order, "third", latch), 90, TimeUnit.MILLISECONDS);
+        wheel.schedule (recorder (order, "first", latch), 30, TimeUnit.MILLISECONDS);
+        wheel.schedule (recorder (order, "second", latch), 60, TimeUnit.MILLISECONDS);
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertEquals (Arrays.asList ("first", "second", "third"), order);
+    }
+
+    @Test
+    public void cancelledTimeoutNeverFires () throws Exception {
+        final CountDownLatch latch = new CountDownLatch (1);
+        final TimingWheel.Timeout timeout = wheel.schedule (countDown (latch), 20, TimeUnit.MILLISECONDS);
+
+        assertTrue (timeout.cancel ());
+        assertFalse (timeout.cancel ());
+        assertFalse (latch.await (100, TimeUnit.MILLISECONDS));
+        assertTrue (timeout.isCancelled ());
+        assertEquals (0, wheel.pendingTimeouts ());
+    }
+
+    @Test
+    public void hugeDelayNeverFires () throws Exception {
+        final CountDownLatch never = new CountDownLatch (2);
+        final CountDownLatch probe = new CountDownLatch (1);
+
+        wheel.schedule (countDown (never), Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        wheel.schedule (countDown (never), Long.MAX_VALUE, TimeUnit.DAYS);
+        wheel.schedule (countDown (probe), 20, TimeUnit.MILLISECONDS);
+
+        assertTrue (probe.await (1, TimeUnit.SECONDS));
+        assertFalse (never.await (50, TimeUnit.MILLISECONDS));
+        assertEquals (2, wheel.pendingTimeouts ());
+    }
+
+    @Test
+    public void hugeScheduleDelayNeverRuns () throws Exception {
+        final AtomicInteger runs = new AtomicInteger ();
+        final FuturePromise<Void> promise = ThreadPool.schedule (Long.MAX_VALUE, TimeUnit.MILLISECONDS,
+                                                                 counter (runs));
+
+        Thread.sleep (50);
+        assertEquals (0, runs.get ());
+        assertFalse (promise.isDone ());
+        promise.cancel (false);
+    }
+
+    @Test
+    public void shorterTimeoutWakesSleepingTimer () throws Exception {
+        final CountDownLatch latch = new CountDownLatch (1);
+
+        wheel.schedule (countDown (new CountDownLatch (1)), 1, TimeUnit.HOURS);
+        Thread.sleep (20); // let the timer go to sleep until the far deadline
+        wheel.schedule (countDown (latch), 10, TimeUnit.MILLISECONDS);
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertEquals (1, wheel.pendingTimeouts ());
+    }
+
+    @Test
+    public void scheduledTaskRunsOnBackgroundPool () throws Exception {
+        final FuturePromise<String> promise = ThreadPool.schedule (20, TimeUnit.MILLISECONDS, new Callable<String> () {
+            @Override public String call () throws Exception {
+                return Thread.currentThread ().getName ();
+            }
+        });
+
+        assertTrue (promise.get (1, TimeUnit.SECONDS).startsWith ("AsyncWorker"));
+    }
+
+    @Test
+    public void cancelledScheduledTaskNeverRuns () throws Exception {
+        final AtomicInteger runs = new AtomicInteger ();
+        final FuturePromise<Void> promise = ThreadPool.schedule (20, TimeUnit.MILLISECONDS, counter (runs));
+
+        assertTrue (promise.cancel (false));
+        Thread.sleep (100);
+
+        assertEquals (0, runs.get ());
+        assertTrue (promise.isCancelled ());
+    }
+
+    @Test
+    public void fixedRateRunsUntilCancelled () throws Exception {
+        final AtomicInteger runs = new AtomicInteger ();
+        final SimplePromise<Void> promise = ThreadPool.scheduleAtFixedRate (0, 20, TimeUnit.MILLISECONDS,
+                                                                            counter (runs));
+
+        Thread.sleep (210);
+        promise.cancelled ();
+        final int seen = runs.get ();
+
+        // 11 runs on time; allow for a late timer
+        assertTrue ("runs: " + seen, seen >= 5 && seen <= 11);
+
+        Thread.sleep (100);
+        assertTrue (runs.get () <= seen + 1);
+    }
+
+    @Test
+    public void fixedDelayWaitsForPreviousRun () throws Exception {
+        final AtomicInteger running = new AtomicInteger ();
+        final AtomicInteger overlaps = new AtomicInteger ();
+        final CountDownLatch latch = new CountDownLatch (5);
+
+        final SimplePromise<Void> promise = ThreadPool.scheduleWithFixedDelay (0, 1, TimeUnit.MILLISECONDS,
+                                                                               new Runnable () {
+            @Override public void run () {
+                if (running.incrementAndGet () > 1)
+                    overlaps.incrementAndGet ();
+
+                sleep (10);
+                running.decrementAndGet ();
+                latch.countDown ();
+            }
+        });
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        promise.cancelled ();
+        assertEquals (0, overlaps.get ());
+    }
+
+    @Test
+    public void periodicTaskStopsOnFailure () throws Exception {
+        final AtomicInteger runs = new AtomicInteger ();
+        final AtomicReference<Throwable> failure = new AtomicReference<> ();
+        final CountDownLatch latch = new CountDownLatch (1);
+
+        ThreadPool.scheduleAtFixedRate (0, 10, TimeUnit.MILLISECONDS, new Runnable () {
+            @Override public void run () {
+                runs.incrementAndGet ();
+                throw new IllegalStateException ("boom");
+            }
+        }).onFail (new Promise.OnFailListener () {
+            @Override public void onFailed (final Throwable error) {
+                failure.set (error);
+                latch.countDown ();
+            }
+        });
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        Thread.sleep (50);
+
+        assertTrue (failure.get () instanceof IllegalStateException);
+        assertEquals (1, runs.get ());
+    }
+
+    @Test
+    public void rejectedRunFailsPeriodicTask () throws Exception {
+        final RejectedExecutionException rejection = new RejectedExecutionException ("test");
+        final SimplePromise<Void> promise = new PeriodicTask (counter (new AtomicInteger ()), 10,
+                                                              TimeUnit.MILLISECONDS, true, wheel, new Executor () {
+            @Override public void execute (final Runnable command) {
+                throw rejection;
+            }
+        }).start (0, TimeUnit.MILLISECONDS);
+
+        try {
+            promise.await (1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertSame (rejection, e.getCause ());
+        }
+
+        assertTrue (promise.isFailed ());
+    }
+
+    @Test
+    public void droppedRunCancelsPeriodicTask () throws Exception {
+        final SimplePromise<Void> promise = new PeriodicTask (counter (new AtomicInteger ()), 10,
+                                                              TimeUnit.MILLISECONDS, true, wheel, new Executor () {
+            @Override public void execute (final Runnable command) {
+                // what a full queue with DROP_NEWEST does
+                ((Future<?>) command).cancel (false);
+            }
+        }).start (0, TimeUnit.MILLISECONDS);
+
+        final long deadline = System.currentTimeMillis () + 1000;
+        while (!promise.isDone () && System.currentTimeMillis () < deadline)
+            Thread.sleep (10);
+
+        assertTrue (promise.isCancelled ());
+    }
+
+    @Test
+    public void cancelledPeriodicTaskLeavesTheTimer () throws Exception {
+        final SimplePromise<Void> promise = new PeriodicTask (counter (new AtomicInteger ()), 1, TimeUnit.HOURS, true,
+                                                              wheel, ThreadPool.background ()).start (1, TimeUnit.HOURS);
+
+        final CountDownLatch latch = new CountDownLatch (1);
+
+        assertEquals (1, wheel.pendingTimeouts ());
+        promise.cancelled ();
+
+        // cancelled entries are unlinked the next time the timer wakes up
+        wheel.schedule (countDown (latch), 10, TimeUnit.MILLISECONDS);
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertEquals (0, wheel.pendingTimeouts ());
+    }
+
+    private static Runnable countDown (final CountDownLatch latch) {
+        return new Runnable () {
+            @Override public void run () {
+                latch.countDown ();
+            }
+        };
+    }
+
+    private static Runnable counter (final AtomicInteger count) {
+        return new Runnable () {
+            @Override public void run () {
+                count.incrementAndGet ();
+            }
+        };
+    }
+
+    private static Runnable recorder (final List<String> order, final String name, final CountDownLatch latch) {
+        return new Runnable () {
+            @Override public void run () {
+                order.add (name);
+                latch.countDown ();
+            }
+        };
+    }
+
+    private static void sleep (final long millis) {
+        try {
+            Thread.sleep (millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+        }
+    }
+}
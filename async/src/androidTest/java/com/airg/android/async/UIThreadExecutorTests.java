@@ -0,0 +1,150 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.os.Looper;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith (AndroidJUnit4.class)
+@SmallTest
+public class UIThreadExecutorTests {
+    @Test
+    public void batchRunsInSubmissionOrderOnMainThread () throws Exception {
+        final UIThreadExecutor executor = batching (UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS);
+        final List<Integer> order = Collections.synchronizedList (new ArrayList<Integer> ());
+        final AtomicInteger offMain = new AtomicInteger ();
+        final CountDownLatch latch = new CountDownLatch (50);
+
+        for (int i = 0; i < 50; i++) {
+            final int n = i;
+
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    if (Looper.getMainLooper () != Looper.myLooper ())
+                        offMain.incrementAndGet ();
+
+                    order.add (n);
+                    latch.countDown ();
+                }
+            });
+        }
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertEquals (0, offMain.get ());
+
+        for (int i = 0; i < 50; i++)
+            assertEquals (i, (int) order.get (i));
+    }
+
+    @Test
+    public void batchYieldsWhenOverBudget () throws Exception {
+        final UIThreadExecutor executor = batching (4);
+        final List<Long> frames = Collections.synchronizedList (new ArrayList<Long> ());
+        final CountDownLatch latch = new CountDownLatch (10);
+
+        for (int i = 0; i < 10; i++)
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    frames.add (System.nanoTime ());
+                    spin (TimeUnit.MILLISECONDS.toNanos (2));
+                    latch.countDown ();
+                }
+            });
+
+        assertTrue (latch.await (2, TimeUnit.SECONDS));
+
+        // 20ms of work with a 4ms budget can't run back to back: there must be at least one gap for a frame
+        int gaps = 0;
+        for (int i = 1; i < frames.size (); i++)
+            if (frames.get (i) - frames.get (i - 1) > TimeUnit.MILLISECONDS.toNanos (5))
+                gaps++;
+
+        assertTrue ("gaps: " + gaps, gaps >= 1);
+    }
+
+    @Test
+    public void tasksSubmittedAfterDrainStillRun () throws Exception {
+        final UIThreadExecutor executor = batching (UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS);
+        final AtomicInteger runs = new AtomicInteger ();
+
+        for (int round = 1; round <= 20; round++) {
+            final CountDownLatch latch = new CountDownLatch (1);
+
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    runs.incrementAndGet ();
+                    latch.countDown ();
+                }
+            });
+
+            assertTrue (latch.await (1, TimeUnit.SECONDS));
+            assertEquals (round, runs.get ());
+        }
+    }
+
+    @Test
+    public void mainThreadTasksRunInline () throws Exception {
+        final UIThreadExecutor executor = batching (UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS);
+        final AtomicInteger nestedRan = new AtomicInteger ();
+        final AtomicInteger seen = new AtomicInteger (-1);
+        final CountDownLatch latch = new CountDownLatch (1);
+
+        executor.execute (new Runnable () {
+            @Override public void run () {
+                executor.execute (new Runnable () {
+                    @Override public void run () {
+                        nestedRan.incrementAndGet ();
+                    }
+                });
+
+                // ran before we got here
+                seen.set (nestedRan.get ());
+                latch.countDown ();
+            }
+        });
+
+        assertTrue (latch.await (1, TimeUnit.SECONDS));
+        assertEquals (1, seen.get ());
+    }
+
+    private static UIThreadExecutor batching (final long frameBudgetMillis) {
+        return new UIThreadExecutor (true, frameBudgetMillis, false);
+    }
+
+    private static void spin (final long nanos) {
+        final long end = System.nanoTime () + nanos;
+
+        //noinspection StatementWithEmptyBody
+        while (System.nanoTime () < end) ;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.os.Build;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.airg.android.device.ApiLevel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ Compares the regular (shared queue) and the work-stealing background pools on a fork-heavy workload: every parent
+ task fans out into a batch of small child tasks submitted from the worker thread. Results are written to logcat under
+ the <code>ForkBench</code> tag.
+ */
+@RunWith (AndroidJUnit4.class)
+@LargeTest
+public class WorkStealingBenchmark {
+    private static final String TAG        = "ForkBench";
+    private static final int    PARENTS    = 500;
+    private static final int    CHILDREN   = 64;
+    private static final int    CHILD_WORK = 2000;
+    private static final int    ROUNDS     = 5;
+
+    // keeps the child work from being optimized away
+    private final AtomicLong sink = new AtomicLong ();
+
+    @Test
+    public void forkHeavyWorkload () throws Exception {
+        assumeTrue ("Work-stealing requires API 21", ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP));
+
+        final ExecutorService queued = ThreadPool.newCPUExecutor (ThreadPool.Config.builder ()
+                                                                                    .workStealing (false)
+                                                                                    .build ());
+        final ExecutorService stealing = ThreadPool.newCPUExecutor (ThreadPool.Config.builder ()
+                                                                                      .workStealing (true)
+                                                                                      .build ());
+
+        try {
+            // warm up both pools
+            runRound (queued);
+            runRound (stealing);
+
+            for (int i = 0; i < ROUNDS; i++) {
+                final long queuedNanos = runRound (queued);
+                final long stealingNanos = runRound (stealing);
+
+                Log.i (TAG, String.format (Locale.ENGLISH, "round %d: shared queue %5d ms, work-stealing %5d ms",
+                                           i, TimeUnit.NANOSECONDS.toMillis (queuedNanos),
+                                           TimeUnit.NANOSECONDS.toMillis (stealingNanos)));
+            }
+        } finally {
+            queued.shutdownNow ();
+            stealing.shutdownNow ();
+        }
+    }
+
+    private long runRound (final ExecutorService executor) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch (PARENTS * CHILDREN);
+
+        final Runnable child = new Runnable () {
+            @Override public void run () {
+                long hash = 17;
+                for (int i = 0; i < CHILD_WORK; i++)
+                    hash = hash * 31 + i;
+
+                sink.addAndGet (hash);
+                done.countDown ();
+            }
+        };
+
+        final Runnable parent = new Runnable () {
+            @Override public void run () {
+                for (int i = 0; i < CHILDREN; i++)
+                    executor.execute (child);
+            }
+        };
+
+        final long start = System.nanoTime ();
+
+        for (int i = 0; i < PARENTS; i++)
+            executor.execute (parent);
+
+        assertTrue ("Workload did not finish", done.await (2, TimeUnit.MINUTES));
+        return System.nanoTime () - start;
+    }
+}
@@ -248,6 +248,33 @@ public class AbstractPromiseTest
         }
     }
 
+    @Test
+    public void abortRunsBeforeCancelListeners () {
+        final AtomicBoolean aborted = new AtomicBoolean ();
+        final AtomicBoolean abortedFirst = new AtomicBoolean ();
+
+        final AbstractPromise<String> promise = new AbstractPromise<String> () {
+            @Override protected String result () {
+                return "never";
+            }
+
+            @Override protected void abort () {
+                aborted.set (true);
+            }
+        };
+
+        promise.onCancel (new Promise.OnCancelListener () {
+            @Override public void onCancelled () {
+                abortedFirst.set (aborted.get ());
+            }
+        });
+
+        promise.cancel ();
+
+        assertTrue (promise.isCancelled ());
+        assertTrue ("abort () should run before the listeners", abortedFirst.get ());
+    }
+
     @Test (expected = RuntimeException.class)
     public void failedExecution () throws InterruptedException {
         final AtomicBoolean lock = new AtomicBoolean ();
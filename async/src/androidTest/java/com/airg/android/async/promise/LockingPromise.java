@@ -0,0 +1,237 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+import lombok.Synchronized;
+
+/**
+ The lock based {@link SimplePromise} implementation, as it was before its state was made lock-free. Only kept as the
+ baseline for {@link PromiseStateBenchmark}.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public class LockingPromise<RESULT> {
+    private Promise.OnCompleteListener<RESULT> onCompleteListener;
+    private Promise.OnFailListener             onFailListener;
+    private Promise.OnCancelListener           onCancelListener;
+
+    private volatile Throwable error  = null;
+    private volatile RESULT    result = null;
+
+    private volatile boolean done      = false;
+    private volatile boolean cancelled = false;
+
+    private final Executor callbackExecutor;
+
+    public LockingPromise () {
+        this (null);
+    }
+
+    public LockingPromise (@Nullable final Executor executor) {
+        callbackExecutor = executor;
+    }
+
+    /**
+     Report task result and mark task as done
+
+     @param r
+     obtained result
+     */
+    @Synchronized
+    public void success (final RESULT r) {
+        assertNotComplete ();
+
+        if (cancelled) {
+            return;
+        }
+
+        done = true;
+        result = r;
+        notifyDoneMaybe ();
+    }
+
+    /**
+     Mark task as failed and provide a cause
+
+     @param t
+     cause of the failure
+     */
+    @Synchronized
+    public void failed (Throwable t) {
+        assertNotComplete ();
+
+        if (cancelled) { // if the task is already cancelled, don't report a failure
+            return;
+        }
+
+        error = t;
+        done = true;
+        notifyFailedMaybe ();
+    }
+
+    /**
+     Mark task as cancelled
+     */
+    @Synchronized
+    public void cancelled () {
+        if (done || isFailed ()) {
+            return;
+        }
+
+        cancelled = true;
+        done = true;
+        notifyCancelledMaybe ();
+    }
+
+    /**
+     Set completion callback
+
+     @param listener
+     listener to notify on completion
+
+     @return this promise to chain more callbacks
+     */
+    @Synchronized
+    public LockingPromise<RESULT> onComplete (Promise.OnCompleteListener<RESULT> listener) {
+        onCompleteListener = listener;
+        notifyDoneMaybe ();
+        return this;
+    }
+
+    /**
+     Set failure callback
+
+     @param listener
+     listener to notify on failure.
+
+     @return this promise to chain more callbacks
+     */
+    @Synchronized
+    public LockingPromise<RESULT> onFail (Promise.OnFailListener listener) {
+        onFailListener = listener;
+        notifyFailedMaybe ();
+        return this;
+    }
+
+    /**
+     Set cancellation callback
+
+     @param listener
+     listener to notify on cancellation
+
+     @return this promise to chain more callbacks
+     */
+    @Synchronized
+    public LockingPromise<RESULT> onCancel (Promise.OnCancelListener listener) {
+        onCancelListener = listener;
+        notifyCancelledMaybe ();
+        return this;
+    }
+
+    /**
+     Are we there yet?
+
+     @return <code>true</code> if task is complete and <code>false</code> otherwise
+     */
+    @Synchronized
+    public boolean isDone () {
+        return done;
+    }
+
+    /**
+     Was the promise successfully completed?
+
+     @return <code>true</code> if task was able to successfully obtain a result, <code>false</code> otherwise
+     */
+    @Synchronized
+    public boolean succeeded () {
+        return done && null != result;
+    }
+
+    /**
+     Did the task fail?
+
+     @return <code>true</code> if failed and <code>false</code> otherwise
+     */
+    @Synchronized
+    public boolean isFailed () {
+        return done && null != error;
+    }
+
+    /**
+     Was the task cancelled?
+
+     @return <code>true</code> if cancelled and <code>false</code> otherwise
+     */
+    @Synchronized
+    public boolean isCancelled () {
+        return cancelled;
+    }
+
+    // ---------- Private helper bits ----------
+
+    private void assertNotComplete () {
+        if (isDone ())
+            throw new IllegalStateException ("Already marked as " + (null == error ? "done" : "failed"));
+    }
+
+    @Synchronized
+    private void notifyDoneMaybe () {
+        if (!done || null == onCompleteListener || cancelled)
+            return;
+
+        runOnExecutor (new Runnable () {
+                    public void run () {
+                onCompleteListener.onComplete (result);
+            }
+        }, callbackExecutor);
+    }
+
+    @Synchronized
+    private void notifyFailedMaybe () {
+        if (!isFailed () || null == onFailListener || cancelled)
+            return;
+        runOnExecutor (new Runnable () {
+                    public void run () {
+                onFailListener.onFailed (error);
+            }
+        }, callbackExecutor);
+    }
+
+    @Synchronized
+    private void notifyCancelledMaybe () {
+        if (!cancelled || null == onCancelListener)
+            return;
+        runOnExecutor (new Runnable () {
+                    public void run () {
+                onCancelListener.onCancelled ();
+            }
+        }, callbackExecutor);
+    }
+
+    private static void runOnExecutor (final Runnable task, final Executor executor) {
+        if (null == executor)
+            task.run ();
+        else
+            executor.execute (task);
+    }
+}
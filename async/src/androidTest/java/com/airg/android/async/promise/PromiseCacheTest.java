@@ -0,0 +1,356 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.content.ComponentCallbacks2;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public final class PromiseCacheTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final PromiseCache.Loader<String, String> loader = new PromiseCache.Loader<String, String>() {
+        @Override
+        public String load(final String key) {
+            loads.incrementAndGet();
+            return key.toUpperCase();
+        }
+    };
+
+    @Test
+    public void hitReturnsCompletedPromise() {
+        final PromiseCache<String, String> cache = builder().build(loader);
+
+        assertEquals("A", cache.get("a").getNow(null));
+
+        final Promise<String> hit = cache.get("a");
+        assertTrue(hit.isDone());
+        assertEquals("A", hit.getNow(null));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() {
+        final List<Runnable> queued = new ArrayList<>();
+        final PromiseCache<String, String> cache = PromiseCache.<String, String>builder()
+                .executor(new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        queued.add(command);
+                    }
+                })
+                .build(loader);
+
+        final Promise<String> first = cache.get("a");
+        final Promise<String> second = cache.get("a");
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+
+        assertEquals("A", first.getNow(null));
+        assertEquals("A", second.getNow(null));
+        assertEquals(1, loads.get());
+        assertEquals("A", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void cancellingOneCallerKeepsTheLoad() {
+        final List<Runnable> queued = new ArrayList<>();
+        final PromiseCache<String, String> cache = PromiseCache.<String, String>builder()
+                .executor(new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        queued.add(command);
+                    }
+                })
+                .build(loader);
+
+        final Promise<String> first = cache.get("a");
+        final Promise<String> second = cache.get("a");
+
+        first.cancel();
+        queued.get(0).run();
+
+        assertTrue(first.isCancelled());
+        assertEquals("A", second.getNow(null));
+    }
+
+    @Test
+    public void getRacingLastCancelIsNotCancelled() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            final List<Runnable> queued = Collections.synchronizedList(new ArrayList<Runnable>());
+            final PromiseCache<String, String> cache = PromiseCache.<String, String>builder()
+                    .executor(new Executor() {
+                        @Override
+                        public void execute(final Runnable command) {
+                            queued.add(command);
+                        }
+                    })
+                    .build(loader);
+
+            final Promise<String> first = cache.get("a");
+            final CountDownLatch go = new CountDownLatch(1);
+            final Thread canceller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    first.cancel();
+                }
+            });
+
+            canceller.start();
+            go.countDown();
+            final Promise<String> second = cache.get("a");
+            canceller.join();
+
+            // whichever load second ended up on must still be there to run
+            for (final Runnable load : new ArrayList<>(queued))
+                load.run();
+
+            assertFalse("iteration " + i, second.isCancelled());
+            assertEquals("A", second.getNow(null));
+        }
+    }
+
+    @Test
+    public void failedLoadIsNotCached() {
+        final PromiseCache<String, String> cache = builder().build(new PromiseCache.Loader<String, String>() {
+            @Override
+            public String load(final String key) throws Exception {
+                if (0 == loads.getAndIncrement())
+                    throw new Exception("flaky");
+
+                return key;
+            }
+        });
+
+        assertTrue(cache.get("a").isFailed());
+        assertEquals(0, cache.size());
+        assertEquals("a", cache.get("a").getNow(null));
+    }
+
+    @Test
+    public void rejectedLoadIsNotCached() {
+        final AtomicInteger rejections = new AtomicInteger(1);
+        final PromiseCache<String, String> cache = PromiseCache.<String, String>builder()
+                .executor(new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        if (rejections.getAndDecrement() > 0)
+                            throw new RejectedExecutionException();
+
+                        command.run();
+                    }
+                })
+                .build(loader);
+
+        assertTrue(cache.get("a").isFailed());
+        assertEquals(0, cache.size());
+        assertEquals("A", cache.get("a").getNow(null));
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyUsed() {
+        final PromiseCache<String, String> cache = builder().maximumWeight(2).build(loader);
+
+        cache.get("a");
+        cache.get("b");
+        cache.get("a");
+        cache.get("c");
+
+        assertNotNull(cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertNotNull(cache.getIfPresent("c"));
+        assertEquals(2, cache.weight());
+    }
+
+    @Test
+    public void weigherBoundsTotalWeight() {
+        final PromiseCache<String, String> cache = builder()
+                .maximumWeight(10)
+                .weigher(new PromiseCache.Weigher<String, String>() {
+                    @Override
+                    public int weigh(final String key, final String value) {
+                        return value.length();
+                    }
+                })
+                .build(loader);
+
+        cache.get("aaaa");
+        cache.get("bbbb");
+        cache.get("cccc");
+
+        assertEquals(8, cache.weight());
+        assertNull(cache.getIfPresent("aaaa"));
+
+        // heavier than the whole cache: loaded, but not cached
+        assertEquals("DDDDDDDDDDDD", cache.get("dddddddddddd").getNow(null));
+        assertNull(cache.getIfPresent("dddddddddddd"));
+        assertTrue(cache.weight() <= 10);
+    }
+
+    @Test
+    public void tinyLfuKeepsFrequentlyUsedEntries() {
+        final PromiseCache<String, String> cache = builder()
+                .maximumWeight(2)
+                .eviction(PromiseCache.Eviction.TINY_LFU)
+                .build(loader);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+
+        // one-off lookups don't push out the popular entries
+        for (int i = 0; i < 10; i++)
+            assertEquals("X" + i, cache.get("x" + i).getNow(null));
+
+        assertNotNull(cache.getIfPresent("a"));
+        assertNotNull(cache.getIfPresent("b"));
+
+        // but an entry that keeps being asked for gets in eventually
+        for (int i = 0; i < 20; i++)
+            cache.get("c");
+
+        assertNotNull(cache.getIfPresent("c"));
+    }
+
+    @Test
+    public void valuesExpireAfterWrite() throws InterruptedException {
+        final PromiseCache<String, String> cache = builder()
+                .expireAfterWrite(50, TimeUnit.MILLISECONDS)
+                .build(loader);
+
+        cache.get("a");
+        cache.get("a");
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+
+        assertNull(cache.getIfPresent("a"));
+        cache.get("a");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void memoryPressureShrinksCache() {
+        final PromiseCache<String, String> cache = builder().build(loader);
+
+        for (int i = 0; i < 8; i++)
+            cache.get("key" + i);
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(8, cache.size());
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(4, cache.size());
+        assertNotNull("most recently used entries stay", cache.getIfPresent("key7"));
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void putReplacesValue() {
+        final PromiseCache<String, String> cache = builder().build(loader);
+
+        cache.put("a", "manual");
+        assertEquals("manual", cache.get("a").getNow(null));
+
+        cache.invalidate("a");
+        assertFalse("manual".equals(cache.get("a").getNow(null)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void putOverCachedKeyKeepsWeight() {
+        final PromiseCache<String, String> cache = builder().maximumWeight(3).build(loader);
+
+        cache.get("a");
+        cache.get("b");
+
+        for (int i = 0; i < 10; i++)
+            cache.put("a", "manual" + i);
+
+        assertEquals(2, cache.weight());
+        assertEquals(2, cache.size());
+        assertNotNull("replacing a value doesn't evict others", cache.getIfPresent("b"));
+        assertEquals("manual9", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void putSkipsTinyLfuAdmission() {
+        final PromiseCache<String, String> cache = builder()
+                .maximumWeight(2)
+                .eviction(PromiseCache.Eviction.TINY_LFU)
+                .build(loader);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+
+        // never asked for, but put explicitly
+        cache.put("c", "manual");
+
+        assertEquals("manual", cache.getIfPresent("c"));
+        assertEquals(2, cache.weight());
+
+        // replacing a popular value doesn't lose it either
+        cache.put("a", "replaced");
+        assertEquals("replaced", cache.getIfPresent("a"));
+    }
+
+    private static PromiseCache.Builder<String, String> builder() {
+        return PromiseCache.<String, String>builder().executor(DIRECT);
+    }
+}
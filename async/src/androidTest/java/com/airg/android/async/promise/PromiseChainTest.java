@@ -0,0 +1,359 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.ThreadPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PromiseChainTest {
+    private static final Promise.Transform<String, Integer> LENGTH = new Promise.Transform<String, Integer>() {
+        @Override
+        public Integer apply(final String input) {
+            return input.length();
+        }
+    };
+
+    @Test
+    public void mapRunsOnCompletingThread() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        final Promise<Integer> mapped = source.map(new Promise.Transform<String, Integer>() {
+            @Override
+            public Integer apply(final String input) {
+                ranOn.set(Thread.currentThread());
+                return input.length();
+            }
+        });
+
+        assertFalse(mapped.isDone());
+        source.success("four");
+
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(4, (int) result(mapped));
+    }
+
+    @Test
+    public void throwingTransformFailsDerivedPromise() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final Promise<Integer> mapped = source.map(LENGTH);
+
+        source.success(null);
+
+        assertTrue(mapped.isFailed());
+        assertTrue(error(mapped) instanceof NullPointerException);
+    }
+
+    @Test
+    public void failureSkipsStepsUntilRecover() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final AtomicInteger mapped = new AtomicInteger();
+        final RuntimeException cause = new RuntimeException("nope");
+
+        final Promise<Integer> chain = source
+          .map(new Promise.Transform<String, Integer>() {
+              @Override
+              public Integer apply(final String input) {
+                  mapped.incrementAndGet();
+                  return input.length();
+              }
+          })
+          .recover(new Promise.Recovery<Integer>() {
+              @Override
+              public Integer recover(final Throwable error) {
+                  return error == cause ? -1 : -2;
+              }
+          });
+
+        source.failed(cause);
+
+        assertEquals(0, mapped.get());
+        assertEquals(-1, (int) result(chain));
+    }
+
+    @Test
+    public void thenFlattensNestedPromise() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final SimplePromise<Integer> inner = new SimplePromise<>();
+
+        final Promise<Integer> chain = source.then(new Promise.AsyncTransform<String, Integer>() {
+            @Override
+            public Promise<Integer> apply(final String input) {
+                return inner;
+            }
+        });
+
+        source.success("go");
+        assertFalse(chain.isDone());
+
+        inner.success(42);
+        assertEquals(42, (int) result(chain));
+    }
+
+    @Test
+    public void nullNestedPromiseFails() {
+        final SimplePromise<String> source = new SimplePromise<>();
+
+        final Promise<Integer> chain = source.then(new Promise.AsyncTransform<String, Integer>() {
+            @Override
+            public Promise<Integer> apply(final String input) {
+                return null;
+            }
+        });
+
+        source.success("go");
+        assertTrue(error(chain) instanceof NullPointerException);
+    }
+
+    @Test
+    public void cancellationFlowsDownstream() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final Promise<Integer> chain = source.map(LENGTH).recover(new Promise.Recovery<Integer>() {
+            @Override
+            public Integer recover(final Throwable error) {
+                return 0;
+            }
+        });
+
+        source.cancelled();
+
+        assertTrue(chain.isCancelled());
+    }
+
+    @Test
+    public void cancellationFlowsUpstream() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final Promise<Integer> mapped = source.map(LENGTH);
+        final Promise<Integer> chain = mapped.map(new Promise.Transform<Integer, Integer>() {
+            @Override
+            public Integer apply(final Integer input) {
+                return input * 2;
+            }
+        });
+
+        chain.cancel();
+
+        assertTrue(mapped.isCancelled());
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void sourceWithOtherConsumersKeepsRunning() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final Promise<Integer> first = source.map(LENGTH);
+        final Promise<Integer> second = source.map(LENGTH);
+
+        first.cancel();
+        assertFalse("second still needs the source", source.isDone());
+
+        second.cancel();
+        assertTrue("nobody needs the source anymore", source.isCancelled());
+    }
+
+    @Test
+    public void sourceWithDirectListenerKeepsRunning() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        source.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+            }
+        });
+
+        source.map(LENGTH).cancel();
+
+        assertFalse(source.isDone());
+    }
+
+    @Test
+    public void cancelledStepIsSkipped() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final AtomicInteger transforms = new AtomicInteger();
+        final Promise<Integer> mapped = source.map(new Promise.Transform<String, Integer>() {
+            @Override
+            public Integer apply(final String input) {
+                transforms.incrementAndGet();
+                return input.length();
+            }
+        });
+
+        // keep the source alive, so the step is still triggered
+        source.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+            }
+        });
+
+        mapped.cancel();
+        source.success("abc");
+
+        assertEquals(0, transforms.get());
+        assertTrue(mapped.isCancelled());
+    }
+
+    @Test
+    public void cancellingThenCancelsNestedPromise() {
+        final SimplePromise<String> source = new SimplePromise<>();
+        final SimplePromise<Integer> nested = new SimplePromise<>();
+        final Promise<Integer> chain = source.then(new Promise.AsyncTransform<String, Integer>() {
+            @Override
+            public Promise<Integer> apply(final String input) {
+                return nested;
+            }
+        });
+
+        source.success("abc");
+        chain.cancel();
+
+        assertTrue(nested.isCancelled());
+    }
+
+    @Test
+    public void cancellingDerivedPromiseSkipsQueuedTask() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        // occupy every background thread, so the task below stays queued
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final CountDownLatch allBlocked = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++)
+            ThreadPool.bg(new Runnable() {
+                @Override
+                public void run() {
+                    allBlocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+
+        final FuturePromise<String> task = new FuturePromise<>(new Callable<String>() {
+            @Override
+            public String call() {
+                runs.incrementAndGet();
+                return "abc";
+            }
+        });
+
+        try {
+            allBlocked.await(1, TimeUnit.SECONDS);
+            ThreadPool.bg(task);
+
+            task.map(LENGTH).cancel();
+
+            assertTrue(task.isCancelled());
+        } finally {
+            release.countDown();
+        }
+
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void releasedSourceCannotBeJoined() {
+        final SimplePromise<String> source = new SimplePromise<>();
+
+        assertTrue(PromiseChain.forward(source, new SimplePromise<String>()));
+
+        // the last consumer let go, but the source hasn't been cancelled yet
+        assertTrue(source.release());
+        assertFalse(PromiseChain.forward(source, new SimplePromise<String>()));
+    }
+
+    @Test
+    public void directListenerKeepsLastConsumerFromReleasing() {
+        final SimplePromise<String> source = new SimplePromise<>();
+
+        assertTrue(PromiseChain.forward(source, new SimplePromise<String>()));
+        source.onCancel(new Promise.OnCancelListener() {
+            @Override
+            public void onCancelled() {
+            }
+        });
+
+        assertFalse(source.release());
+        assertTrue(PromiseChain.forward(source, new SimplePromise<String>()));
+    }
+
+    @Test
+    public void onExecutorMovesRestOfChain() {
+        final AtomicInteger dispatched = new AtomicInteger();
+        final Executor counting = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                dispatched.incrementAndGet();
+                command.run();
+            }
+        };
+
+        final SimplePromise<String> source = new SimplePromise<>();
+        final Promise<Integer> chain = source.onExecutor(counting).map(LENGTH);
+
+        source.success("abc");
+
+        assertEquals(3, (int) result(chain));
+        assertTrue(dispatched.get() > 0);
+    }
+
+    private static <T> T result(final Promise<T> promise) {
+        final AtomicReference<T> result = new AtomicReference<>();
+
+        promise.onComplete(new Promise.OnCompleteListener<T>() {
+            @Override
+            public void onComplete(final T value) {
+                result.set(value);
+            }
+        });
+
+        assertTrue("Promise should have succeeded", promise.succeeded());
+        return result.get();
+    }
+
+    private static Throwable error(final Promise<?> promise) {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        promise.onFail(new Promise.OnFailListener() {
+            @Override
+            public void onFailed(final Throwable t) {
+                error.set(t);
+            }
+        });
+
+        assertTrue("Promise should have failed", promise.isFailed());
+        return error.get();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ Compares the lock-free {@link SimplePromise} with the previous, lock based implementation ({@link LockingPromise}):
+ <ul>
+ <li><em>lifecycle</em>: create a promise, register a listener, complete it and query its state, on one thread</li>
+ <li><em>polling</em>: several threads querying the state of the same pending promises, the way workers check for
+ cancellation</li>
+ </ul>
+ Results are written to logcat under the <code>PromiseBench</code> tag.
+ */
+@RunWith (AndroidJUnit4.class)
+@LargeTest
+public class PromiseStateBenchmark {
+    private static final String TAG              = "PromiseBench";
+    private static final int    LIFECYCLES       = 200000;
+    private static final int    POLLS_PER_THREAD = 1000000;
+    private static final int[]  POLLERS          = {1, 2, 4, 8};
+
+    private final AtomicInteger completions = new AtomicInteger ();
+
+    private final Promise.OnCompleteListener<Integer> listener = new Promise.OnCompleteListener<Integer> () {
+        @Override public void onComplete (final Integer result) {
+            completions.incrementAndGet ();
+        }
+    };
+
+    @Test
+    public void lifecycle () {
+        // warm up
+        lockFreeLifecycle (LIFECYCLES / 10);
+        lockingLifecycle (LIFECYCLES / 10);
+
+        report ("lifecycle, lock-free", LIFECYCLES, lockFreeLifecycle (LIFECYCLES));
+        report ("lifecycle, locking  ", LIFECYCLES, lockingLifecycle (LIFECYCLES));
+    }
+
+    @Test
+    public void polling () throws Exception {
+        for (final int pollers : POLLERS) {
+            final SimplePromise<Integer> lockFree = new SimplePromise<> ();
+            final LockingPromise<Integer> locking = new LockingPromise<> ();
+
+            report (String.format (Locale.ENGLISH, "%d pollers, lock-free", pollers), pollers * POLLS_PER_THREAD,
+                    poll (new Pending () {
+                        @Override public boolean pending () {
+                            return !(lockFree.isDone () || lockFree.isCancelled ());
+                        }
+                    }, pollers));
+            report (String.format (Locale.ENGLISH, "%d pollers, locking  ", pollers), pollers * POLLS_PER_THREAD,
+                    poll (new Pending () {
+                        @Override public boolean pending () {
+                            return !(locking.isDone () || locking.isCancelled ());
+                        }
+                    }, pollers));
+        }
+    }
+
+    private long lockFreeLifecycle (final int count) {
+        completions.set (0);
+        final long start = System.nanoTime ();
+
+        for (int i = 0; i < count; i++) {
+            final SimplePromise<Integer> promise = new SimplePromise<> ();
+            promise.onComplete (listener);
+            promise.success (i);
+
+            if (!promise.succeeded () || promise.isCancelled ())
+                throw new AssertionError ();
+        }
+
+        final long elapsed = System.nanoTime () - start;
+        assertEquals (count, completions.get ());
+        return elapsed;
+    }
+
+    private long lockingLifecycle (final int count) {
+        completions.set (0);
+        final long start = System.nanoTime ();
+
+        for (int i = 0; i < count; i++) {
+            final LockingPromise<Integer> promise = new LockingPromise<> ();
+            promise.onComplete (listener);
+            promise.success (i);
+
+            if (!promise.succeeded () || promise.isCancelled ())
+                throw new AssertionError ();
+        }
+
+        final long elapsed = System.nanoTime () - start;
+        assertEquals (count, completions.get ());
+        return elapsed;
+    }
+
+    /**
+     @return time it took all threads to finish their polls, in nanoseconds
+     */
+    private static long poll (final Pending promise, final int pollers) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch (1);
+        final CountDownLatch done = new CountDownLatch (pollers);
+
+        for (int i = 0; i < pollers; i++)
+            new Thread (new Runnable () {
+                @Override public void run () {
+                    try {
+                        start.await ();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int n = 0; n < POLLS_PER_THREAD; n++)
+                        if (!promise.pending ())
+                            throw new AssertionError ();
+
+                    done.countDown ();
+                }
+            }).start ();
+
+        final long begin = System.nanoTime ();
+        start.countDown ();
+        done.await ();
+        return System.nanoTime () - begin;
+    }
+
+    private interface Pending {
+        boolean pending ();
+    }
+
+    private static void report (final String label, final long operations, final long elapsed) {
+        Log.i (TAG, String.format (Locale.ENGLISH, "%s: %9d ops in %6d ms (%.1f ops/us)", label, operations,
+                                   TimeUnit.NANOSECONDS.toMillis (elapsed), operations * 1e3 / elapsed));
+    }
+}
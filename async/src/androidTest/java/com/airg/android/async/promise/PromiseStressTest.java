@@ -0,0 +1,251 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Completes and cancels promises from several threads at once. Every promise must report exactly one outcome, and a
+ listener that takes its time must not hold up anyone else.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public final class PromiseStressTest {
+    private static final int ROUNDS = 2000;
+
+    private final ExecutorService threads = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void simplePromiseCompleteVersusCancel() throws Exception {
+        race(new Factory() {
+            @Override
+            public Contender create() {
+                final SimplePromise<String> promise = new SimplePromise<>();
+                return new Contender(promise, new Runnable() {
+                    @Override
+                    public void run() {
+                        promise.success("done");
+                    }
+                });
+            }
+        });
+    }
+
+    @Test
+    public void abstractPromiseCompleteVersusCancel() throws Exception {
+        race(new Factory() {
+            @Override
+            public Contender create() {
+                final AbstractPromise<String> promise = new AbstractPromise<String>() {
+                    @Override
+                    protected String result() {
+                        return "done";
+                    }
+                };
+                return new Contender(promise, promise);
+            }
+        });
+    }
+
+    @Test
+    public void futurePromiseCompleteVersusCancel() throws Exception {
+        race(new Factory() {
+            @Override
+            public Contender create() {
+                final FuturePromise<String> promise = new FuturePromise<>(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return "done";
+                    }
+                });
+                return new Contender(promise, promise);
+            }
+        });
+    }
+
+    @Test
+    public void slowListenerDoesNotBlockAbstractPromise() throws Exception {
+        final AbstractPromise<String> promise = new AbstractPromise<String>() {
+            @Override
+            protected String result() {
+                return "done";
+            }
+        };
+
+        assertNotBlockedBySlowListener(promise, promise);
+    }
+
+    @Test
+    public void slowListenerDoesNotBlockFuturePromise() throws Exception {
+        final FuturePromise<String> promise = new FuturePromise<>(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+
+        assertNotBlockedBySlowListener(promise, promise);
+    }
+
+    /**
+     Complete the promise while its only listener blocks, then check that another thread can still query it, add
+     listeners and cancel it.
+     */
+    private void assertNotBlockedBySlowListener(final Promise<String> promise, final Runnable complete)
+            throws Exception {
+        final CountDownLatch inListener = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lateCompletions = new AtomicInteger();
+
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                inListener.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+
+        threads.execute(complete);
+        assertTrue("listener should have been called", inListener.await(1, TimeUnit.SECONDS));
+
+        final Future<Boolean> others = threads.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                promise.onComplete(new Promise.OnCompleteListener<String>() {
+                    @Override
+                    public void onComplete(final String result) {
+                        lateCompletions.incrementAndGet();
+                    }
+                });
+                promise.cancel();
+                return promise.isDone() && !promise.isCancelled();
+            }
+        });
+
+        try {
+            assertTrue("promise should be done, not cancelled", others.get(1, TimeUnit.SECONDS));
+            assertEquals(1, lateCompletions.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private void race(final Factory factory) throws Exception {
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicInteger cancellations = new AtomicInteger();
+
+        for (int i = 0; i < ROUNDS; i++) {
+            final Contender contender = factory.create();
+            final Promise<String> promise = contender.promise;
+            final AtomicInteger outcomes = new AtomicInteger();
+            final CountDownLatch notified = new CountDownLatch(1);
+
+            promise.onComplete(new Promise.OnCompleteListener<String>() {
+                @Override
+                public void onComplete(final String result) {
+                    // queries from within a listener must not deadlock with the other thread
+                    assertTrue(promise.isDone());
+                    completions.incrementAndGet();
+                    outcomes.incrementAndGet();
+                    notified.countDown();
+                }
+            }).onCancel(new Promise.OnCancelListener() {
+                @Override
+                public void onCancelled() {
+                    assertTrue(promise.isDone());
+                    cancellations.incrementAndGet();
+                    outcomes.incrementAndGet();
+                    notified.countDown();
+                }
+            });
+
+            final CyclicBarrier start = new CyclicBarrier(2);
+            final Future<?> completing = threads.submit(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    contender.complete.run();
+                }
+            });
+            final Future<?> cancelling = threads.submit(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    promise.cancel();
+                }
+            });
+
+            completing.get(1, TimeUnit.SECONDS);
+            cancelling.get(1, TimeUnit.SECONDS);
+
+            assertTrue("round " + i + " stalled", notified.await(1, TimeUnit.SECONDS));
+            assertEquals("round " + i + " reported more than one outcome", 1, outcomes.get());
+        }
+
+        assertEquals(ROUNDS, completions.get() + cancellations.get());
+    }
+
+    private static void await(final CyclicBarrier barrier) {
+        try {
+            barrier.await(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface Factory {
+        Contender create();
+    }
+
+    private static final class Contender {
+        final Promise<String> promise;
+        final Runnable        complete;
+
+        Contender(final Promise<String> p, final Runnable c) {
+            promise = p;
+            complete = c;
+        }
+    }
+}
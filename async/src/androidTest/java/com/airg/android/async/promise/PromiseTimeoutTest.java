@@ -0,0 +1,180 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.airg.android.async.ThreadPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public final class PromiseTimeoutTest {
+    @Test
+    public void simplePromiseTimesOut() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<String>().timeout(50, TimeUnit.MILLISECONDS);
+
+        assertTimedOut(promise);
+    }
+
+    @Test
+    public void completedPromiseDoesNotTimeOut() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<String>().timeout(50, TimeUnit.MILLISECONDS);
+        promise.success("in time");
+
+        Thread.sleep(150);
+
+        assertTrue(promise.succeeded());
+        assertEquals("in time", promise.getNow(null));
+    }
+
+    @Test
+    public void lateResultIsIgnored() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<String>().timeout(20, TimeUnit.MILLISECONDS);
+        assertTimedOut(promise);
+
+        assertFalse(promise.trySuccess("too late"));
+        assertTrue(promise.isFailed());
+    }
+
+    @Test
+    public void abstractPromiseIsAborted() throws Exception {
+        final CountDownLatch aborted = new CountDownLatch(1);
+        final AbstractPromise<String> promise = new AbstractPromise<String>() {
+            @Override
+            protected String result() throws Exception {
+                Thread.sleep(500);
+                return "too late";
+            }
+
+            @Override
+            protected void abort() {
+                aborted.countDown();
+            }
+        }.timeout(50, TimeUnit.MILLISECONDS);
+
+        ThreadPool.bg(promise);
+
+        assertTimedOut(promise);
+        assertTrue("abort() should have been called", aborted.await(1, TimeUnit.SECONDS));
+
+        // the task finishing later must not blow up or change the outcome
+        Thread.sleep(600);
+        assertTrue(promise.isFailed());
+    }
+
+    @Test
+    public void futurePromiseRunnerIsInterrupted() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final FuturePromise<String> promise = new FuturePromise<>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "too late";
+            }
+        }).timeout(50, TimeUnit.MILLISECONDS);
+
+        ThreadPool.bg(promise);
+
+        assertTimedOut(promise);
+        assertTrue("task should have been interrupted", interrupted.await(1, TimeUnit.SECONDS));
+        assertFalse(promise.isCancelled());
+    }
+
+    @Test
+    public void timeoutInterruptDoesNotLeakIntoNextTask() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+
+        try {
+            final FuturePromise<String> slow = new FuturePromise<>(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    Thread.sleep(10000);
+                    return "too late";
+                }
+            }).timeout(50, TimeUnit.MILLISECONDS);
+
+            single.execute(slow);
+            assertTimedOut(slow);
+
+            final Future<Boolean> next = single.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().isInterrupted();
+                }
+            });
+
+            assertFalse("next task on the thread should not be interrupted", next.get(1, TimeUnit.SECONDS));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void manyPendingTimeouts() throws Exception {
+        final int count = 20000;
+        final List<SimplePromise<Integer>> promises = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            promises.add(new SimplePromise<Integer>().timeout(200, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < count; i++)
+            promises.get(i).success(i);
+
+        Thread.sleep(400);
+
+        for (final SimplePromise<Integer> promise : promises)
+            assertTrue(promise.succeeded());
+    }
+
+    private static void assertTimedOut(final Promise<String> promise) throws InterruptedException {
+        try {
+            promise.await(2, TimeUnit.SECONDS);
+            fail("promise should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("promise.timeout() didn't fire");
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PromisesTest {
+    @Test
+    public void allKeepsSourceOrder() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<List<Integer>> all = Promises.all(sources);
+
+        sources.get(2).success(2);
+        sources.get(0).success(0);
+        assertFalse(all.isDone());
+
+        sources.get(1).success(1);
+        assertEquals(Arrays.asList(0, 1, 2), result(all));
+    }
+
+    @Test
+    public void allFailsOnFirstFailure() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<List<Integer>> all = Promises.all(sources);
+        final RuntimeException cause = new RuntimeException();
+
+        sources.get(1).failed(cause);
+
+        assertSame(cause, error(all));
+    }
+
+    @Test
+    public void allOfNothingSucceeds() {
+        assertEquals(Collections.emptyList(), result(Promises.all(new ArrayList<Promise<Integer>>())));
+    }
+
+    @Test
+    public void allSettledWaitsForEveryOutcome() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<List<SimplePromise<Integer>>> settled = Promises.allSettled(sources);
+
+        sources.get(0).success(0);
+        sources.get(1).failed(new RuntimeException());
+        assertFalse(settled.isDone());
+
+        sources.get(2).cancelled();
+        assertEquals(sources, result(settled));
+    }
+
+    @Test
+    public void anyTakesFirstSuccessAndCancelsLosers() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<Integer> any = Promises.any(sources, true);
+
+        sources.get(0).failed(new RuntimeException());
+        assertFalse(any.isDone());
+
+        sources.get(1).success(1);
+
+        assertEquals(1, (int) result(any));
+        assertTrue(sources.get(2).isCancelled());
+    }
+
+    @Test
+    public void anyFailsWhenAllFail() {
+        final List<SimplePromise<Integer>> sources = promises(2);
+        final Promise<Integer> any = Promises.any(sources);
+        final RuntimeException first = new RuntimeException("first");
+        final RuntimeException second = new RuntimeException("second");
+
+        // the second one in the list fails first
+        sources.get(1).failed(first);
+        sources.get(0).failed(second);
+
+        final Throwable error = error(any);
+        assertTrue(error instanceof Promises.AllFailedException);
+        assertSame(first, error.getCause());
+        assertSame(second, error.getSuppressed()[0]);
+        assertEquals("source errors are left alone", 0, first.getSuppressed().length);
+    }
+
+    @Test
+    public void anyOfNothingFails() {
+        assertTrue(error(Promises.any(new ArrayList<Promise<Integer>>())) instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void raceTakesFirstOutcome() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<Integer> race = Promises.race(sources);
+        final RuntimeException cause = new RuntimeException();
+
+        sources.get(2).failed(cause);
+        sources.get(0).success(0);
+
+        assertSame(cause, error(race));
+        assertFalse(sources.get(1).isDone());
+    }
+
+    @Test
+    public void raceCancelsLosers() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<Integer> race = Promises.race(sources, true);
+
+        sources.get(1).success(1);
+
+        assertEquals(1, (int) result(race));
+        assertTrue(sources.get(0).isCancelled());
+        assertTrue(sources.get(2).isCancelled());
+    }
+
+    @Test
+    public void cancellingAggregateCancelsSources() {
+        final List<SimplePromise<Integer>> sources = promises(3);
+        final Promise<List<Integer>> all = Promises.all(sources);
+
+        sources.get(0).success(0);
+        all.cancel();
+
+        assertTrue(sources.get(0).succeeded());
+        assertTrue(sources.get(1).isCancelled());
+        assertTrue(sources.get(2).isCancelled());
+    }
+
+    @Test
+    public void concurrentCompletionsAggregateOnce() throws InterruptedException {
+        final int count = 64;
+        final List<SimplePromise<Integer>> sources = promises(count);
+        final Promise<List<Integer>> all = Promises.all(sources);
+        final CountDownLatch done = new CountDownLatch(count);
+
+        for (int i = 0; i < count; i++) {
+            final int n = i;
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    sources.get(n).success(n);
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        final List<Integer> results = result(all);
+        for (int i = 0; i < count; i++)
+            assertEquals(i, (int) results.get(i));
+    }
+
+    private static List<SimplePromise<Integer>> promises(final int count) {
+        final List<SimplePromise<Integer>> promises = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            promises.add(new SimplePromise<Integer>());
+
+        return promises;
+    }
+
+    private static <T> T result(final Promise<T> promise) {
+        final AtomicReference<T> result = new AtomicReference<>();
+
+        promise.onComplete(new Promise.OnCompleteListener<T>() {
+            @Override
+            public void onComplete(final T value) {
+                result.set(value);
+            }
+        });
+
+        assertTrue("Promise should have succeeded", promise.succeeded());
+        return result.get();
+    }
+
+    private static Throwable error(final Promise<?> promise) {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        promise.onFail(new Promise.OnFailListener() {
+            @Override
+            public void onFailed(final Throwable t) {
+                error.set(t);
+            }
+        });
+
+        assertTrue("Promise should have failed", promise.isFailed());
+        return error.get();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.os.Debug;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ Completing a promise and notifying its listeners must not allocate. Listener registration on a pending promise needs a
+ stack node, so the promises are set up before allocations are counted. Each case is measured a few times and the
+ best round counts: the runtime itself may allocate now and then (e.g. while compiling), the promise must not.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public final class SimplePromiseAllocationTest {
+    private static final int    WARM_UP = 5000;
+    private static final int    COUNT   = 1000;
+    private static final int    ROUNDS  = 5;
+    private static final Object RESULT  = new Object();
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void inlineNotificationDoesNotAllocate() {
+        measure(null, WARM_UP, false);
+
+        assertEquals("allocations while notifying", 0, steadyState(null, false));
+    }
+
+    @Test
+    public void executorNotificationDoesNotAllocate() {
+        measure(DIRECT, WARM_UP, false);
+
+        assertEquals("allocations while notifying", 0, steadyState(DIRECT, false));
+    }
+
+    @Test
+    public void cancellationDoesNotAllocate() {
+        measure(null, WARM_UP, true);
+
+        assertEquals("allocations while notifying", 0, steadyState(null, true));
+    }
+
+    @Test
+    public void lateInlineListenerDoesNotAllocate() {
+        final Listener listener = new Listener();
+        final SimplePromise<Object> promise = new SimplePromise<>();
+        promise.success(RESULT);
+
+        for (int i = 0; i < WARM_UP; i++)
+            promise.onComplete(listener);
+
+        int allocations = Integer.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS && allocations > 0; round++) {
+            startCounting();
+
+            for (int i = 0; i < COUNT; i++)
+                promise.onComplete(listener);
+
+            allocations = Math.min(allocations, stopCounting());
+        }
+
+        assertEquals("allocations while notifying", 0, allocations);
+    }
+
+    private static int steadyState(final Executor executor, final boolean cancel) {
+        int allocations = Integer.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS && allocations > 0; round++)
+            allocations = Math.min(allocations, measure(executor, COUNT, cancel));
+
+        return allocations;
+    }
+
+    /**
+     @return the number of allocations made while completing <code>count</code> promises
+     */
+    @SuppressWarnings("unchecked")
+    private static int measure(final Executor executor, final int count, final boolean cancel) {
+        final Listener listener = new Listener();
+        final SimplePromise<Object>[] promises = new SimplePromise[count];
+
+        for (int i = 0; i < count; i++)
+            promises[i] = new SimplePromise<>(executor)
+                    .onComplete(listener)
+                    .onFail(listener)
+                    .onCancel(listener);
+
+        startCounting();
+
+        for (final SimplePromise<Object> promise : promises)
+            if (cancel)
+                promise.cancelled();
+            else
+                promise.success(RESULT);
+
+        final int allocations = stopCounting();
+
+        assertEquals(count, cancel ? listener.cancelled : listener.completed);
+        return allocations;
+    }
+
+    // The Debug allocation counters are deprecated (they are meant for the profiler), but they are the only way to
+    // count the allocations of a single thread on a device without an agent. The warnings stay confined to these two.
+
+    @SuppressWarnings("deprecation")
+    private static void startCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     @return the number of allocations made on this thread since {@link #startCounting()}
+     */
+    @SuppressWarnings("deprecation")
+    private static int stopCounting() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    private static final class Listener
+            implements Promise.OnCompleteListener<Object>, Promise.OnFailListener, Promise.OnCancelListener {
+        int completed;
+        int cancelled;
+
+        @Override
+        public void onComplete(final Object result) {
+            completed++;
+        }
+
+        @Override
+        public void onFailed(final Throwable error) {
+        }
+
+        @Override
+        public void onCancelled() {
+            cancelled++;
+        }
+    }
+}
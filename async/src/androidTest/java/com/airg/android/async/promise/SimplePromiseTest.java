@@ -18,6 +18,8 @@
 
 package com.airg.android.async.promise;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.Log;
 
@@ -26,13 +28,27 @@ import com.airg.android.async.ThreadPool;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Mahram Z. Foadi
@@ -342,6 +358,481 @@ public class SimplePromiseTest extends BaseExecutorTest {
         throw t;
     }
 
+    @Test
+    public void nullResultSucceeds() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        promise.success(null);
+
+        assertTrue("Task should be done", promise.isDone());
+        assertTrue("Task should have succeeded", promise.succeeded());
+        assertFalse(promise.isFailed());
+        assertFalse(promise.isCancelled());
+    }
+
+    @Test
+    public void resultAfterCancelIsIgnored() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        promise.cancelled();
+        promise.success("too late");
+        promise.failed(new RuntimeException("too late"));
+
+        assertTrue(promise.isCancelled());
+        assertFalse(promise.succeeded());
+        assertFalse(promise.isFailed());
+    }
+
+    @Test
+    public void resultAfterCancelIsNotReported() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        final AtomicInteger reported = new AtomicInteger();
+
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                reported.incrementAndGet();
+            }
+        }).onFail(new Promise.OnFailListener() {
+            @Override
+            public void onFailed(final Throwable error) {
+                reported.incrementAndGet();
+            }
+        });
+
+        promise.cancel();
+
+        // a task that finishes after it was cancelled doesn't have to check first
+        promise.success("too late");
+        promise.failed(new RuntimeException("too late"));
+
+        assertEquals(0, reported.get());
+        assertEquals("default", promise.getNow("default"));
+    }
+
+    @Test
+    public void nullResultIsReported() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        final AtomicBoolean completed = new AtomicBoolean();
+
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                assertNull(result);
+                completed.set(true);
+            }
+        });
+
+        promise.success(null);
+
+        assertTrue(completed.get());
+        assertTrue(promise.succeeded());
+        assertNull(promise.getNow("default"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void secondResultIsRejected() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        promise.success("first");
+        promise.failed(new RuntimeException("second"));
+    }
+
+    @Test
+    public void racingCompletionsHaveOneWinner() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            final SimplePromise<Integer> promise = new SimplePromise<>();
+            final AtomicInteger notified = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(3);
+
+            promise.onComplete(new Promise.OnCompleteListener<Integer>() {
+                @Override
+                public void onComplete(final Integer result) {
+                    notified.incrementAndGet();
+                }
+            }).onFail(new Promise.OnFailListener() {
+                @Override
+                public void onFailed(final Throwable error) {
+                    notified.incrementAndGet();
+                }
+            }).onCancel(new Promise.OnCancelListener() {
+                @Override
+                public void onCancelled() {
+                    notified.incrementAndGet();
+                }
+            });
+
+            final Runnable[] racers = {
+              new Runnable() {
+                  @Override
+                  public void run() {
+                      promise.trySuccess(1);
+                  }
+              },
+              new Runnable() {
+                  @Override
+                  public void run() {
+                      promise.tryFail(new RuntimeException());
+                  }
+              },
+              new Runnable() {
+                  @Override
+                  public void run() {
+                      promise.cancelled();
+                  }
+              }
+            };
+
+            for (final Runnable racer : racers)
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            racer.run();
+                        } catch (InterruptedException ignored) {
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+
+            start.countDown();
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+
+            assertEquals("Exactly one listener should have been notified", 1, notified.get());
+            assertEquals(1, (promise.succeeded() ? 1 : 0) + (promise.isFailed() ? 1 : 0)
+                            + (promise.isCancelled() ? 1 : 0));
+        }
+    }
+
+    @Test
+    public void allListenersNotifiedInOrder() {
+        final List<String> order = new ArrayList<>();
+        final SimplePromise<String> promise = new SimplePromise<>();
+
+        for (int i = 0; i < 3; i++) {
+            final String name = "listener" + i;
+
+            promise.onComplete(new Promise.OnCompleteListener<String>() {
+                @Override
+                public void onComplete(final String result) {
+                    order.add(name + ":" + result);
+                }
+            });
+        }
+
+        promise.success("done");
+
+        // late listeners are notified right away
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                order.add("late:" + result);
+            }
+        });
+
+        assertEquals(Arrays.asList("listener0:done", "listener1:done", "listener2:done", "late:done"), order);
+    }
+
+    @Test
+    public void throwingListenerDoesNotSkipTheNextOne() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        final IllegalStateException boom = new IllegalStateException("boom");
+        final AtomicReference<String> second = new AtomicReference<>();
+
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                throw boom;
+            }
+        });
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                second.set(result);
+            }
+        });
+
+        try {
+            promise.success("done");
+            fail("the listener's exception should be passed on");
+        } catch (IllegalStateException e) {
+            assertSame(boom, e);
+        }
+
+        assertEquals("done", second.get());
+        assertTrue(promise.succeeded());
+    }
+
+    @Test
+    public void listenersOnlyHearTheirOutcome() {
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final SimplePromise<String> promise = new SimplePromise<>();
+
+        final Everything listener = new Everything(completions, failures);
+        promise.onComplete(listener);
+        promise.failed(new RuntimeException());
+
+        assertEquals(0, completions.get());
+        assertEquals(0, failures.get());
+
+        promise.onFail(listener);
+        assertEquals(1, failures.get());
+    }
+
+    @Test
+    public void racingRegistrationsAreNotifiedOnce() throws InterruptedException {
+        final int registrars = 4;
+        final int perRegistrar = 500;
+
+        for (int round = 0; round < 20; round++) {
+            final SimplePromise<Integer> promise = new SimplePromise<>();
+            final AtomicInteger notified = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(registrars);
+
+            final Promise.OnCompleteListener<Integer> listener = new Promise.OnCompleteListener<Integer>() {
+                @Override
+                public void onComplete(final Integer result) {
+                    notified.incrementAndGet();
+                }
+            };
+
+            for (int i = 0; i < registrars; i++)
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+
+                            for (int n = 0; n < perRegistrar; n++)
+                                promise.onComplete(listener);
+                        } catch (InterruptedException ignored) {
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+
+            start.countDown();
+            promise.success(round);
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+
+            assertEquals(registrars * perRegistrar, notified.get());
+        }
+    }
+
+    @Test
+    public void awaitBlocksUntilSuccess() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        completeLater(promise, "done", null);
+
+        assertEquals("done", promise.await());
+    }
+
+    @Test
+    public void awaitReportsFailure() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        final RuntimeException cause = new RuntimeException("nope");
+        completeLater(promise, null, cause);
+
+        try {
+            promise.await(1, TimeUnit.SECONDS);
+            fail("await should have thrown");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void awaitReportsCancellation() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        promise.cancelled();
+        promise.await();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void awaitTimesOut() throws Exception {
+        new SimplePromise<String>().await(20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void timedOutAwaitsDontPileUp() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<>();
+
+        for (int i = 0; i < 100; i++)
+            try {
+                promise.await(0, TimeUnit.NANOSECONDS);
+                fail("await should have timed out");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+        final Field waiters = SimplePromise.class.getDeclaredField("waiters");
+        waiters.setAccessible(true);
+        assertNull("waiter nodes should be unlinked on timeout", waiters.get(promise));
+
+        promise.success("done");
+        assertEquals("done", promise.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitIsInterruptible() throws Exception {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    promise.await();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+
+        waiter.start();
+        Thread.sleep(50);
+        waiter.interrupt();
+        waiter.join(1000);
+
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+
+    @Test
+    public void awaitIsRejectedOnMainThread() throws InterruptedException {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        promise.success("done");
+
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    promise.await();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+
+                ran.countDown();
+            }
+        });
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertTrue(thrown.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void getNowDoesNotWait() {
+        final SimplePromise<String> promise = new SimplePromise<>();
+        assertEquals("default", promise.getNow("default"));
+
+        promise.success("done");
+        assertEquals("done", promise.getNow("default"));
+    }
+
+    @Test
+    public void executorListenersShareOneDispatch() {
+        final List<Runnable> queued = new ArrayList<>();
+        final List<String> order = new ArrayList<>();
+        final SimplePromise<String> promise = new SimplePromise<>(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                queued.add(command);
+            }
+        });
+
+        for (final String name : Arrays.asList("a", "b", "c"))
+            promise.onComplete(new Promise.OnCompleteListener<String>() {
+                @Override
+                public void onComplete(final String result) {
+                    order.add(name);
+                }
+            });
+
+        promise.success("done");
+        assertEquals("one executor task for all listeners", 1, queued.size());
+        assertSame("the promise is its own dispatch task", promise, queued.get(0));
+
+        queued.get(0).run();
+        assertEquals(Arrays.asList("a", "b", "c"), order);
+
+        // nothing left to deliver
+        queued.get(0).run();
+        assertEquals(3, order.size());
+    }
+
+    @Test
+    public void rejectedDispatchDeliversOnCaller() {
+        final List<String> order = new ArrayList<>();
+        final SimplePromise<String> promise = new SimplePromise<>(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("shut down");
+            }
+        });
+
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                order.add("early:" + result);
+            }
+        });
+
+        promise.success("done");
+        assertEquals(Arrays.asList("early:done"), order);
+
+        // the dispatch stack isn't left behind: later listeners are delivered too
+        promise.onComplete(new Promise.OnCompleteListener<String>() {
+            @Override
+            public void onComplete(final String result) {
+                order.add("late:" + result);
+            }
+        });
+
+        assertEquals(Arrays.asList("early:done", "late:done"), order);
+    }
+
+    private static <T> void completeLater(final SimplePromise<T> promise, final T result, final Throwable error) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+
+                if (null == error)
+                    promise.success(result);
+                else
+                    promise.failed(error);
+            }
+        }).start();
+    }
+
+    private static class Everything implements Promise.OnCompleteListener<String>, Promise.OnFailListener {
+        private final AtomicInteger completions;
+        private final AtomicInteger failures;
+
+        Everything(final AtomicInteger c, final AtomicInteger f) {
+            completions = c;
+            failures = f;
+        }
+
+        @Override
+        public void onComplete(final String result) {
+            completions.incrementAndGet();
+        }
+
+        @Override
+        public void onFailed(final Throwable error) {
+            failures.incrementAndGet();
+        }
+    }
+
     private static class EchoTaskRunner<VALUE> implements Runnable {
 
         private final EchoTask<VALUE> task;
@@ -0,0 +1,221 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2017 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public final class SingleFlightTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SingleFlight<String, String> flights = new SingleFlight<>(executor);
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        gate.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneTask() throws Exception {
+        final int callers = 16;
+        final List<Promise<String>> promises = new ArrayList<>();
+        final CountDownLatch ready = new CountDownLatch(callers);
+        final ExecutorService threads = Executors.newFixedThreadPool(callers);
+
+        try {
+            final List<Future<Promise<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++)
+                futures.add(threads.submit(new Callable<Promise<String>>() {
+                    @Override
+                    public Promise<String> call() throws Exception {
+                        ready.countDown();
+                        ready.await();
+                        return flights.get("key", gated("value"));
+                    }
+                }));
+
+            for (final Future<Promise<String>> future : futures)
+                promises.add(future.get(1, TimeUnit.SECONDS));
+        } finally {
+            threads.shutdown();
+        }
+
+        gate.countDown();
+
+        for (final Promise<String> promise : promises)
+            assertEquals("value", promise.await(1, TimeUnit.SECONDS));
+
+        assertEquals("one task for all callers", 1, runs.get());
+    }
+
+    @Test
+    public void rejectedTaskReleasesKey() throws Exception {
+        final AtomicInteger rejections = new AtomicInteger(1);
+        final SingleFlight<String, String> rejecting = new SingleFlight<>(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                if (rejections.getAndDecrement() > 0)
+                    throw new RejectedExecutionException();
+
+                executor.execute(command);
+            }
+        });
+
+        gate.countDown();
+
+        try {
+            rejecting.get("key", gated("first")).await(1, TimeUnit.SECONDS);
+            fail("rejected task should fail its callers");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        assertEquals(0, rejecting.inFlight());
+        assertEquals("second", rejecting.get("key", gated("second")).await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void differentKeysRunSeparately() throws Exception {
+        final Promise<String> a = flights.get("a", gated("a"));
+        final Promise<String> b = flights.get("b", gated("b"));
+
+        assertEquals(2, flights.inFlight());
+        gate.countDown();
+
+        assertEquals("a", a.await(1, TimeUnit.SECONDS));
+        assertEquals("b", b.await(1, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void keyIsReleasedOnCompletion() throws Exception {
+        gate.countDown();
+
+        assertEquals("first", flights.get("key", gated("first")).await(1, TimeUnit.SECONDS));
+        assertEquals(0, flights.inFlight());
+
+        assertEquals("second", flights.get("key", gated("second")).await(1, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void failureReachesEveryCaller() throws Exception {
+        final RuntimeException error = new RuntimeException("nope");
+        final Callable<String> failing = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                gate.await();
+                throw error;
+            }
+        };
+
+        final Promise<String> first = flights.get("key", failing);
+        final Promise<String> second = flights.get("key", failing);
+        gate.countDown();
+
+        for (final Promise<String> promise : new Promise[]{first, second})
+            try {
+                promise.await(1, TimeUnit.SECONDS);
+                fail("should have failed");
+            } catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+    }
+
+    @Test
+    public void taskRunsUntilEveryCallerCancels() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "value";
+            }
+        };
+
+        final Promise<String> first = flights.get("key", task);
+        final Promise<String> second = flights.get("key", task);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        first.cancel();
+        assertTrue(first.isCancelled());
+        assertFalse("second caller still waits", second.isDone());
+        assertEquals(1, flights.inFlight());
+
+        second.cancel();
+        assertTrue("shared task should be interrupted", interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    public void callerAfterCancellationStartsOver() throws Exception {
+        flights.get("key", gated("stale")).cancel();
+
+        final Promise<String> fresh = flights.get("key", gated("fresh"));
+        gate.countDown();
+
+        assertEquals("fresh", fresh.await(1, TimeUnit.SECONDS));
+    }
+
+    private Callable<String> gated(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                gate.await();
+                return value;
+            }
+        };
+    }
+}
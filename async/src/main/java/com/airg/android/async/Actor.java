@@ -0,0 +1,127 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ A message handler that processes its messages one at a time, in the order they were sent. Use it for state machines
+ that would otherwise be guarded by <code>synchronized</code>: senders never block or contend on a lock, they only add
+ a message to the actor's mailbox (a lock-free queue).
+ <p>
+ An actor has no thread of its own. It is scheduled on the {@link ThreadPool#background()} pool (or the executor it was
+ created with) when a message arrives at an empty mailbox, and processes up to <code>batchSize</code> messages before
+ it gives the thread back, so a busy actor can't starve other actors or tasks on the pool. Each message is processed
+ after the previous one completed, so fields only touched by {@link #onMessage(Object)} need no locking, even though
+ consecutive messages may be processed on different threads.
+ <pre>
+ {@code
+ class Downloader extends Actor<Event> {
+     private State state = State.IDLE;
+
+     @Override protected void onMessage (final Event event) {
+         state = state.next (event);
+     }
+ }
+
+ downloader.tell (Event.START);
+ }
+ </pre>
+
+ @param <M>
+ message type
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public abstract class Actor<M>
+  extends Mailbox<M> {
+    /**
+     Default number of messages processed before the actor gives its thread back to the pool
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     Create an actor on the background pool with the {@link #DEFAULT_BATCH_SIZE}
+     */
+    protected Actor () {
+        this (null, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     Create an actor on the background pool
+
+     @param batchSize
+     maximum number of messages processed before the thread is given back to the pool
+     */
+    protected Actor (final int batchSize) {
+        this (null, batchSize);
+    }
+
+    /**
+     Create an actor on another executor, i.e. {@link ThreadPool#io()} for an actor that blocks
+
+     @param executor
+     executor to process messages on. <code>null</code> for the background pool.
+     @param batchSize
+     maximum number of messages processed before the thread is given back to the pool
+
+     @throws IllegalArgumentException
+     if <code>batchSize</code> is not positive
+     */
+    protected Actor (final Executor executor, final int batchSize) {
+        super (executor, batchSize);
+    }
+
+    /**
+     Send a message. Returns right away; the message is processed after all the messages sent before it.
+
+     @param message
+     message to process
+
+     @throws RejectedExecutionException
+     if the actor had to be scheduled and the pool rejected it. The message is dropped.
+     */
+    public final void tell (@NonNull final M message) {
+        enqueue (message);
+    }
+
+    /**
+     Get the number of messages waiting to be processed. Approximate while messages are being sent.
+
+     @return number of queued messages, not counting the one being processed
+     */
+    public final int backlog () {
+        return pending ();
+    }
+
+    /**
+     Process a message. Never called concurrently. If this throws, the exception is passed on to the pool thread after
+     the remaining messages have been rescheduled, so the actor keeps running.
+
+     @param message
+     message that was sent with {@link #tell(Object)}
+     */
+    protected abstract void onMessage (M message);
+
+    @Override final void process (final M message) {
+        onMessage (message);
+    }
+}
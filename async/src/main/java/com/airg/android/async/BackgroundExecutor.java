@@ -0,0 +1,85 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Fixed size pool backing {@link ThreadPool#background()}. Queued tasks are ordered by {@link Prioritized priority},
+ then by submission order. The queue may be bounded, in which case tasks that don't fit are handled according to a
+ {@link BackpressurePolicy}. If a {@link PoolSizer} is provided, the number of workers is adjusted to the observed
+ ratio of waiting to computing.
+ */
+final class BackgroundExecutor
+  extends ThreadPoolExecutor {
+    private final long      agingNanos;
+    private final PoolSizer sizer;
+
+    BackgroundExecutor (final int poolSize, final ThreadFactory threadFactory, final long agingMillis) {
+        this (poolSize, threadFactory, agingMillis, TaskQueue.UNBOUNDED, BackpressurePolicy.FAIL);
+    }
+
+    BackgroundExecutor (final int poolSize, final ThreadFactory threadFactory, final long agingMillis,
+                        final int queueCapacity, final BackpressurePolicy policy) {
+        this (poolSize, threadFactory, agingMillis, queueCapacity, policy, null);
+    }
+
+    BackgroundExecutor (final int poolSize, final ThreadFactory threadFactory, final long agingMillis,
+                        final int queueCapacity, final BackpressurePolicy policy, final PoolSizer poolSizer) {
+        super (poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new TaskQueue (queueCapacity), threadFactory,
+               new BackpressureHandler (policy));
+        agingNanos = TimeUnit.MILLISECONDS.toNanos (agingMillis);
+        sizer = poolSizer;
+    }
+
+    @Override
+    public void execute (@NonNull final Runnable command) {
+        super.execute (command instanceof PriorityTask ? command : new PriorityTask (command, agingNanos));
+    }
+
+    /**
+     Remove a task that hasn't started yet. Tasks are queued wrapped in a {@link PriorityTask}, so the task passed to
+     {@link #execute(Runnable)} can't be removed as is.
+     */
+    @Override
+    public boolean remove (final Runnable task) {
+        final PriorityTask queued = ((TaskQueue) getQueue ()).find (task);
+        return null != queued && super.remove (queued);
+    }
+
+    @Override
+    protected void beforeExecute (final Thread thread, final Runnable task) {
+        super.beforeExecute (thread, task);
+
+        if (null != sizer)
+            sizer.taskStarted ();
+    }
+
+    @Override
+    protected void afterExecute (final Runnable task, final Throwable error) {
+        if (null != sizer)
+            sizer.taskFinished (this);
+
+        super.afterExecute (task, error);
+    }
+}
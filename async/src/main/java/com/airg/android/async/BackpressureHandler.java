@@ -0,0 +1,121 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.PromiseInternals;
+import com.airg.android.async.promise.SimplePromise;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ Applies a {@link BackpressurePolicy} to tasks that don't fit in the {@link TaskQueue}. Tasks that were cancelled
+ while queued are purged before the policy applies.
+ */
+final class BackpressureHandler
+  implements RejectedExecutionHandler {
+    private final BackpressurePolicy policy;
+
+    BackpressureHandler (final BackpressurePolicy backpressurePolicy) {
+        if (null == backpressurePolicy)
+            throw new IllegalArgumentException ("Backpressure policy required");
+
+        policy = backpressurePolicy;
+    }
+
+    @Override
+    public void rejectedExecution (final Runnable task, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown ()) {
+            drop (task);
+            throw new RejectedExecutionException ("Thread pool has been shut down");
+        }
+
+        // cancelled tasks are left in the queue to keep cancel () cheap. Make room by dropping those first, so they
+        // don't block producers or push live tasks out.
+        if (((TaskQueue) executor.getQueue ()).purgeDone () > 0) {
+            executor.execute (task);
+            return;
+        }
+
+        switch (policy) {
+            case BLOCK:
+                block (task, executor);
+                break;
+            case CALLER_RUNS:
+                task.run ();
+                break;
+            case DROP_OLDEST:
+                drop (((TaskQueue) executor.getQueue ()).pollOldest ());
+                executor.execute (task);
+                break;
+            case DROP_NEWEST:
+                drop (task);
+                break;
+            case FAIL:
+                fail (task);
+                break;
+        }
+    }
+
+    private static void block (final Runnable task, final ThreadPoolExecutor executor) {
+        try {
+            ((TaskQueue) executor.getQueue ()).putBlocking (task);
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            drop (task);
+            throw new RejectedExecutionException ("Interrupted while waiting for room in the queue", e);
+        }
+
+        // shut down while we were waiting: the workers may be gone already
+        if (executor.isShutdown () && executor.remove (task)) {
+            drop (task);
+            throw new RejectedExecutionException ("Thread pool has been shut down");
+        }
+    }
+
+    /**
+     Complete a task that will never run, so no one waits for it forever. A {@link SimplePromise} queued as a task is
+     delivering its listeners rather than doing work: that is done right away instead.
+     */
+    private static void drop (final Runnable task) {
+        final Runnable unwrapped = unwrap (task);
+
+        if (unwrapped instanceof Future)
+            ((Future<?>) unwrapped).cancel (false);
+        else if (unwrapped instanceof SimplePromise)
+            unwrapped.run ();
+        else if (unwrapped instanceof Promise)
+            ((Promise<?>) unwrapped).cancel ();
+    }
+
+    private static void fail (final Runnable task) {
+        final RejectedExecutionException error = new RejectedExecutionException ("Background queue is full");
+        final Runnable unwrapped = unwrap (task);
+
+        if (!(unwrapped instanceof Promise) || !PromiseInternals.fail ((Promise<?>) unwrapped, error))
+            throw error;
+    }
+
+    private static Runnable unwrap (final Runnable task) {
+        return task instanceof PriorityTask ? ((PriorityTask) task).task : task;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+/**
+ What the {@link ThreadPool#background()} pool does with a new task when its queue is full. Only applies when a
+ queue capacity has been set via {@link ThreadPool.Config.ConfigBuilder#queueCapacity(int)}.
+ <p>
+ Whenever a task is dropped and it is a {@link java.util.concurrent.Future} (i.e. a
+ {@link com.airg.android.async.promise.FuturePromise}), it is cancelled so its listeners are notified.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public enum BackpressurePolicy {
+    /**
+     The submitting thread waits until there is room in the queue. Do not use this policy if tasks are submitted from
+     the main thread.
+     */
+    BLOCK,
+
+    /**
+     The task is run right away on the submitting thread. This naturally slows producers down to the rate at which
+     tasks are being processed.
+     */
+    CALLER_RUNS,
+
+    /**
+     The task that has been waiting in the queue the longest is dropped to make room for the new one. Best suited for
+     work that goes stale, such as loads requested while scrolling.
+     */
+    DROP_OLDEST,
+
+    /**
+     The new task is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     The new task is rejected. A {@link com.airg.android.async.promise.FuturePromise} is failed with a
+     {@link java.util.concurrent.RejectedExecutionException}; any other task causes the submitting call to throw one.
+     */
+    FAIL
+}
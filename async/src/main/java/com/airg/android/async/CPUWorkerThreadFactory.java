@@ -18,6 +18,7 @@
 
 package com.airg.android.async;
 
+import android.os.Process;
 import android.support.annotation.NonNull;
 
 import java.util.Locale;
@@ -25,7 +26,9 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Threadfactory for background executor
+ * Threadfactory for background executor. Besides the Java thread priority (which barely affects scheduling on
+ * Android), a Linux thread priority (nice value, see {@link Process#setThreadPriority(int)}) can be provided. It is
+ * applied by each worker on itself as soon as it starts.
  * @author Mahram Z. Foadi
  */
 
@@ -35,6 +38,12 @@ final class CPUWorkerThreadFactory
     private final AtomicInteger nameCounter = new AtomicInteger ();
     private final String namePrefix;
     private final int threadPriority;
+    private final int processPriority;
+
+    /**
+     * Leave the worker's Linux thread priority alone
+     */
+    static final int NO_PROCESS_PRIORITY = Integer.MIN_VALUE;
 
     CPUWorkerThreadFactory () {
         this ("Worker");
@@ -45,12 +54,41 @@ final class CPUWorkerThreadFactory
     }
 
     CPUWorkerThreadFactory (final String name, final int priority) {
+        this (name, priority, NO_PROCESS_PRIORITY);
+    }
+
+    CPUWorkerThreadFactory (final String name, final int priority, final int linuxPriority) {
         namePrefix = name;
         threadPriority = priority;
+        processPriority = linuxPriority;
     }
 
     @Override public Thread newThread (@NonNull final Runnable runnable) {
-        final Thread thread = new Thread (runnable);
+        if (NO_PROCESS_PRIORITY == processPriority)
+            return configure (new Thread (runnable));
+
+        // the nice value can only be set reliably from the thread itself
+        return configure (new Thread (new Runnable () {
+            @Override public void run () {
+                onWorkerStart ();
+                runnable.run ();
+            }
+        }));
+    }
+
+    /**
+     * Must be called by every worker thread before it runs any task
+     */
+    void onWorkerStart () {
+        if (NO_PROCESS_PRIORITY != processPriority)
+            Process.setThreadPriority (processPriority);
+    }
+
+    /**
+     Apply this factory's naming, priority, and daemon settings to a thread created elsewhere (i.e. a
+     <code>ForkJoinWorkerThread</code>)
+     */
+    Thread configure (final Thread thread) {
         thread.setDaemon (true);
         thread.setName (workerName(namePrefix, nameCounter.getAndIncrement ()));
         thread.setPriority (threadPriority);
@@ -0,0 +1,191 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ Queue of items processed one at a time, in order, on threads borrowed from an {@link Executor}. Any number of threads
+ may add items. At most one drain task is ever queued or running: whoever finds the mailbox idle schedules it, so the
+ mailbox only occupies a pool thread while it has items. A drain processes up to <code>batchSize</code> items and then
+ goes to the back of the pool's queue if there is more to do.
+ <p>
+ The drain is handed to the pool as a {@link java.util.concurrent.Future}, so a bounded background queue that drops it
+ (see {@link BackpressurePolicy}) cancels it rather than losing it: a drain dropped while it is being scheduled is
+ reported as a {@link RejectedExecutionException}, and one evicted from the queue later leaves the mailbox idle, so its
+ items are picked up when the next one is added.
+ <p>
+ Base of {@link SerialExecutor} and {@link Actor}.
+ */
+abstract class Mailbox<M> {
+    private static final Runnable NOTHING = new Runnable () {
+        @Override public void run () {
+        }
+    };
+
+    private final Executor      executor;
+    private final int           batchSize;
+    private final Queue<M>      items    = new ConcurrentLinkedQueue<> ();
+    private final AtomicBoolean draining = new AtomicBoolean ();
+
+    /**
+     @param runOn
+     executor to borrow threads from, or <code>null</code> for the {@link ThreadPool#background()} pool. The pool is
+     only looked up when the first item is added, so mailboxes can be created before {@link ThreadPool#init}.
+     @param batch
+     maximum number of items processed before the thread is handed back to the pool
+     */
+    Mailbox (final Executor runOn, final int batch) {
+        if (batch <= 0)
+            throw new IllegalArgumentException ("Invalid batch size: " + batch);
+
+        executor = runOn;
+        batchSize = batch;
+    }
+
+    /**
+     Process an item. If this throws, the remaining items are handed back to the pool before the exception is passed
+     on, so the mailbox doesn't stall.
+     */
+    abstract void process (M item);
+
+    /**
+     Add an item and schedule a drain if the mailbox was idle
+
+     @throws RejectedExecutionException
+     if the pool rejected or dropped the drain. The item is not processed.
+     */
+    final void enqueue (final M item) {
+        if (null == item)
+            throw new NullPointerException ("item");
+
+        items.offer (item);
+        schedule (item);
+    }
+
+    final boolean dequeue (final M item) {
+        return items.remove (item);
+    }
+
+    final int pending () {
+        return items.size ();
+    }
+
+    private void schedule (final M added) {
+        if (!draining.compareAndSet (false, true))
+            return;
+
+        final Drain drain = new Drain ();
+
+        try {
+            (null == executor ? ThreadPool.background () : executor).execute (drain);
+        } catch (RejectedExecutionException e) {
+            draining.set (false);
+            forget (added);
+            throw e;
+        }
+
+        // dropped by the pool's backpressure policy before execute() returned. done() has cleared the flag already.
+        if (!drain.submitting.compareAndSet (true, false)) {
+            forget (added);
+            throw new RejectedExecutionException ("Dropped by the pool");
+        }
+    }
+
+    private void forget (final M added) {
+        // items added by others in the meantime are processed with the next one
+        if (null != added)
+            items.remove (added);
+    }
+
+    private void runBatch () {
+        for (int i = 0; i < batchSize; i++) {
+            final M item = items.poll ();
+
+            if (null == item) {
+                draining.set (false);
+
+                // an item added after the poll, but before the flag was cleared, found the mailbox busy
+                if (items.isEmpty () || !draining.compareAndSet (false, true))
+                    return;
+
+                continue;
+            }
+
+            boolean processed = false;
+
+            try {
+                process (item);
+                processed = true;
+            } finally {
+                if (!processed)
+                    resubmit ();
+            }
+        }
+
+        // more to do, but let others have a turn
+        resubmit ();
+    }
+
+    private void resubmit () {
+        draining.set (false);
+
+        if (!items.isEmpty ())
+            try {
+                schedule (null);
+            } catch (RejectedExecutionException e) {
+                // the items stay queued and are picked up by the next enqueue
+            }
+    }
+
+    /**
+     One scheduled run of {@link #runBatch()}. Completes before the batch starts, so once running it can no longer be
+     cancelled; if it is cancelled while queued, the mailbox goes back to idle.
+     */
+    private final class Drain
+      extends FutureTask<Void> {
+        final AtomicBoolean submitting = new AtomicBoolean (true);
+
+        Drain () {
+            super (NOTHING, null);
+        }
+
+        @Override public void run () {
+            set (null);
+
+            if (!isCancelled ())
+                runBatch ();
+        }
+
+        @Override protected void done () {
+            if (!isCancelled ())
+                return;
+
+            draining.set (false);
+
+            // tells schedule() if it is still waiting on execute(). Evicted later, the items wait for the next enqueue.
+            submitting.set (false);
+        }
+    }
+}
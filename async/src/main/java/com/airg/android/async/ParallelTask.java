@@ -0,0 +1,238 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.SimplePromise;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Applies an operation to every item of a list on a pool, for {@link ThreadPool#parallelMap} and
+ {@link ThreadPool#parallelForEach}. A few runners are submitted (no more than the pool has threads) and claim chunks
+ of the list from a shared cursor until it is used up, so a runner that gets slow items simply claims fewer chunks.
+ Chunks shrink as the list runs out (guided self-scheduling): early chunks are large to keep the claiming overhead low,
+ late ones small so the runners finish at about the same time. Inputs that fit in one chunk run on the caller.
+ <p>
+ Stops at the first failure, or when the promise is cancelled. Fails with a {@link RejectedExecutionException} if the
+ pool rejects or drops (see {@link BackpressurePolicy}) every runner before one of them got to start.
+ */
+abstract class ParallelTask<T, R>
+  implements Runnable {
+    // a chunk is at most 1 / (runners * CHUNK_DIVISOR) of what's left
+    private static final int CHUNK_DIVISOR = 2;
+
+    final List<? extends T> items;
+
+    private final SimplePromise<R> promise = new SimplePromise<> ();
+    private final int              minChunk;
+    private final AtomicInteger    cursor  = new AtomicInteger ();
+    private final AtomicInteger    pending;
+    private final AtomicBoolean    settled = new AtomicBoolean ();
+
+    // runners that were submitted and not dropped, plus one held by start () while it submits them
+    private final AtomicInteger live = new AtomicInteger (1);
+
+    private int runners;
+
+    ParallelTask (final List<? extends T> list, final int minChunkSize) {
+        if (minChunkSize <= 0)
+            throw new IllegalArgumentException ("Invalid chunk size: " + minChunkSize);
+
+        items = list;
+        minChunk = minChunkSize;
+        pending = new AtomicInteger (list.size ());
+    }
+
+    /**
+     Process one item
+
+     @param index
+     position of <code>item</code> in the list
+     */
+    abstract void apply (int index, T item) throws Exception;
+
+    /**
+     @return result, once every item has been processed
+     */
+    abstract R result ();
+
+    /**
+     Start processing
+
+     @param executor
+     pool to run on
+     @param parallelism
+     number of threads the pool runs tasks on
+
+     @return a promise of the result
+     */
+    final Promise<R> start (final Executor executor, final int parallelism) {
+        final int size = items.size ();
+
+        if (0 == size) {
+            promise.success (result ());
+            return promise;
+        }
+
+        if (size <= minChunk) {
+            runners = 1;
+            run ();
+            return promise;
+        }
+
+        runners = Math.max (1, Math.min (parallelism, (size + minChunk - 1) / minChunk));
+
+        RejectedExecutionException rejected = null;
+
+        for (int i = 0; i < runners; i++) {
+            live.incrementAndGet ();
+
+            try {
+                executor.execute (new Runner ());
+            } catch (RejectedExecutionException e) {
+                // chunks aren't tied to runners: the ones already submitted will do all the work
+                live.decrementAndGet ();
+                rejected = e;
+                break;
+            }
+        }
+
+        dropped (rejected);
+        return promise;
+    }
+
+    @Override public final void run () {
+        final int size = items.size ();
+
+        while (!promise.isDone ()) {
+            final int start = cursor.get ();
+
+            if (start >= size)
+                return;
+
+            final int end = start + Math.min (size - start,
+                                              Math.max (minChunk, (size - start) / (runners * CHUNK_DIVISOR)));
+
+            if (!cursor.compareAndSet (start, end))
+                continue;
+
+            for (int i = start; i < end; i++) {
+                // cancelled or failed elsewhere
+                if (promise.isDone ())
+                    return;
+
+                try {
+                    apply (i, items.get (i));
+                } catch (Throwable t) {
+                    fail (t);
+                    return;
+                }
+            }
+
+            // the last chunk to finish also sees the results of all the others
+            if (0 == pending.addAndGet (start - end) && settled.compareAndSet (false, true))
+                promise.success (result ());
+        }
+    }
+
+    private void fail (final Throwable t) {
+        if (settled.compareAndSet (false, true))
+            promise.failed (t);
+    }
+
+    /**
+     A runner won't run. Once none are left, nobody will claim the remaining chunks.
+
+     @param cause
+     why, if the pool said so
+     */
+    private void dropped (final RejectedExecutionException cause) {
+        if (0 == live.decrementAndGet ())
+            fail (null != cause ? cause : new RejectedExecutionException ("Every runner was dropped by the pool"));
+    }
+
+    /**
+     Submitted to the pool instead of the task itself, so a bounded pool that drops it cancels it rather than losing it
+     */
+    private final class Runner
+      extends FutureTask<Void> {
+        Runner () {
+            super (ParallelTask.this, null);
+        }
+
+        @Override protected void done () {
+            if (isCancelled ())
+                dropped (null);
+        }
+    }
+
+    /**
+     Collect the transformed items, in list order
+     */
+    static final class Map<T, R>
+      extends ParallelTask<T, List<R>> {
+        private final Promise.Transform<? super T, ? extends R> transform;
+        private final Object[]                                  results;
+
+        Map (final List<? extends T> list, final int minChunkSize,
+             final Promise.Transform<? super T, ? extends R> fn) {
+            super (list, minChunkSize);
+            transform = fn;
+            results = new Object[list.size ()];
+        }
+
+        @Override void apply (final int index, final T item) throws Exception {
+            results[index] = transform.apply (item);
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override List<R> result () {
+            return Collections.unmodifiableList ((List<R>) Arrays.asList (results));
+        }
+    }
+
+    /**
+     Only run the action on each item
+     */
+    static final class ForEach<T>
+      extends ParallelTask<T, Void> {
+        private final ThreadPool.Action<? super T> action;
+
+        ForEach (final List<? extends T> list, final int minChunkSize, final ThreadPool.Action<? super T> fn) {
+            super (list, minChunkSize);
+            action = fn;
+        }
+
+        @Override void apply (final int index, final T item) throws Exception {
+            action.apply (item);
+        }
+
+        @Override Void result () {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.SimplePromise;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Runs a task repeatedly on an {@link Executor}, driven by a {@link TimingWheel}. Only one run is ever in flight: the
+ next one is scheduled when the previous one finishes, so a slow run delays the next one instead of overlapping it.
+ Stops when the promise is cancelled or the task throws. A run the executor rejects fails the promise, and a run it
+ drops (see {@link BackpressurePolicy}) cancels it.
+ */
+final class PeriodicTask
+  implements Runnable {
+    private final Runnable            task;
+    private final long                periodNanos;
+    private final boolean             fixedRate;
+    private final TimingWheel         timer;
+    private final Executor            executor;
+    private final SimplePromise<Void> promise = new SimplePromise<> ();
+
+    private final Runnable dispatch = new Runnable () {
+        @Override public void run () {
+            if (promise.isDone ())
+                return;
+
+            try {
+                executor.execute (new Run ());
+            } catch (RejectedExecutionException e) {
+                promise.failed (e);
+            }
+        }
+    };
+
+    // start time of the next run. Only touched by the run in flight.
+    private long nextRun;
+
+    // timer entry of the next run, cancelled along with the promise
+    private volatile TimingWheel.Timeout next;
+
+    /**
+     @param runnable
+     task to run
+     @param period
+     time between runs: between the start of consecutive runs if <code>rate</code> is set, between the end of one
+     run and the start of the next otherwise
+     @param unit
+     unit of <code>period</code>
+     @param rate
+     fixed rate if <code>true</code>, fixed delay if <code>false</code>
+     @param wheel
+     timer to schedule runs on
+     @param runOn
+     executor the task runs on
+     */
+    PeriodicTask (final Runnable runnable, final long period, final TimeUnit unit, final boolean rate,
+                  final TimingWheel wheel, final Executor runOn) {
+        if (period <= 0)
+            throw new IllegalArgumentException ("Invalid period: " + period);
+
+        task = runnable;
+        periodNanos = unit.toNanos (period);
+        fixedRate = rate;
+        timer = wheel;
+        executor = runOn;
+
+        promise.onCancel (new Promise.OnCancelListener () {
+            @Override public void onCancelled () {
+                final TimingWheel.Timeout timeout = next;
+
+                if (null != timeout)
+                    timeout.cancel ();
+            }
+        });
+    }
+
+    SimplePromise<Void> start (final long initialDelay, final TimeUnit unit) {
+        final long delayNanos = Math.max (0, unit.toNanos (initialDelay));
+        nextRun = System.nanoTime () + delayNanos;
+        scheduleNext (delayNanos);
+        return promise;
+    }
+
+    @Override public void run () {
+        if (promise.isDone ())
+            return;
+
+        try {
+            task.run ();
+        } catch (Throwable t) {
+            // ignored if the task was cancelled while it ran
+            promise.failed (t);
+            return;
+        }
+
+        if (promise.isDone ())
+            return;
+
+        final long now = System.nanoTime ();
+
+        // fixed rate: keep to the original schedule. If a run overran, the next one starts right away, but missed
+        // runs are not made up.
+        nextRun = fixedRate ? Math.max (now, nextRun + periodNanos) : now + periodNanos;
+        scheduleNext (nextRun - now);
+    }
+
+    private void scheduleNext (final long delayNanos) {
+        final TimingWheel.Timeout timeout = timer.schedule (dispatch, delayNanos, TimeUnit.NANOSECONDS);
+        next = timeout;
+
+        // the cancel listener may have run before the entry was stored
+        if (promise.isDone ())
+            timeout.cancel ();
+    }
+
+    /**
+     A single run, queued as a {@link java.util.concurrent.Future} so that a pool that drops it cancels the schedule
+     rather than silently ending it
+     */
+    private final class Run
+      extends FutureTask<Void> {
+        Run () {
+            super (PeriodicTask.this, null);
+        }
+
+        @Override protected void done () {
+            if (isCancelled ())
+                promise.cancelled ();
+        }
+    }
+}
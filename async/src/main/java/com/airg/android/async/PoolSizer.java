@@ -0,0 +1,135 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.os.Debug;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Resizes a {@link ThreadPoolExecutor} based on how much of their time its workers actually spend on the CPU.
+ <p>
+ For every task, the wall clock time and the worker's CPU time are recorded. The difference is time the worker was
+ blocked, but also time it was ready to run and waiting for a core, and the two can't be told apart. So once per
+ window, the pool is resized according to how busy it kept the cores:
+ <ul>
+ <li>If the cores were saturated, waiting for a core may be all the difference, and more threads can't help. The pool
+ shrinks by one thread, but not below one thread per core. Work that really blocks leaves cores idle again, and the
+ next window grows the pool back.</li>
+ <li>Otherwise, the difference is mostly blocking, and the pool is resized to <code>cpus * wall / cpu</code> threads
+ (i.e. <code>cpus * (1 + wait / compute)</code>). Growth is capped at the number of threads that would keep the cores
+ just busy at the observed CPU use per thread.</li>
+ </ul>
+ The result is clamped to the configured bounds: CPU bound work settles at about one thread per core while work that
+ mostly waits gets more threads to keep the cores busy.
+ */
+final class PoolSizer {
+    static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos (1);
+
+    // share of the cores the pool has to keep busy to count as saturating them
+    private static final double SATURATED = 0.9;
+
+    private final int  minPoolSize;
+    private final int  maxPoolSize;
+    private final int  cpus;
+    private final long windowNanos;
+
+    private final AtomicLong wallNanos   = new AtomicLong ();
+    private final AtomicLong cpuNanos    = new AtomicLong ();
+    private final AtomicLong windowStart = new AtomicLong (System.nanoTime ());
+
+    private final ThreadLocal<long[]> taskStart = new ThreadLocal<long[]> () {
+        @Override protected long[] initialValue () {
+            return new long[2];
+        }
+    };
+
+    PoolSizer (final int min, final int max, final int cpuCount, final long window) {
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException ("Invalid pool size bounds: [" + min + ", " + max + "]");
+
+        minPoolSize = min;
+        maxPoolSize = max;
+        cpus = Math.max (1, cpuCount);
+        windowNanos = window;
+    }
+
+    int clamp (final int poolSize) {
+        return Math.max (minPoolSize, Math.min (maxPoolSize, poolSize));
+    }
+
+    /**
+     Called on the worker thread right before it runs a task
+     */
+    void taskStarted () {
+        final long[] start = taskStart.get ();
+        start[0] = System.nanoTime ();
+        start[1] = Debug.threadCpuTimeNanos ();
+    }
+
+    /**
+     Called on the worker thread right after it ran a task
+     */
+    void taskFinished (final ThreadPoolExecutor executor) {
+        final long[] start = taskStart.get ();
+        final long cpuStart = start[1];
+        final long cpuEnd = Debug.threadCpuTimeNanos ();
+
+        // thread cpu time is not supported on this device: nothing to go on
+        if (cpuStart < 0 || cpuEnd < 0)
+            return;
+
+        final long now = System.nanoTime ();
+        wallNanos.addAndGet (now - start[0]);
+        cpuNanos.addAndGet (cpuEnd - cpuStart);
+
+        final long windowStarted = windowStart.get ();
+        if (now - windowStarted >= windowNanos && windowStart.compareAndSet (windowStarted, now))
+            resize (executor, wallNanos.getAndSet (0), cpuNanos.getAndSet (0), now - windowStarted);
+    }
+
+    private void resize (final ThreadPoolExecutor executor, final long wall, final long cpu, final long elapsed) {
+        if (wall <= 0 || elapsed <= 0)
+            return;
+
+        final int current = executor.getCorePoolSize ();
+
+        // average number of cores the pool kept busy during the window
+        final double busy = (double) cpu / elapsed;
+        final int target;
+
+        if (busy >= cpus * SATURATED)
+            target = clamp (Math.max (Math.min (cpus, current), current - 1));
+        else {
+            final double estimate = cpu <= 0 ? maxPoolSize : (double) cpus * wall / cpu;
+            final double cap = busy <= 0 ? maxPoolSize : Math.ceil (current * cpus / busy);
+            target = clamp ((int) Math.min (maxPoolSize, Math.round (Math.min (estimate, cap))));
+        }
+
+        if (target > current) {
+            executor.setMaximumPoolSize (target);
+            executor.setCorePoolSize (target);
+        } else if (target < current) {
+            executor.setCorePoolSize (target);
+            executor.setMaximumPoolSize (target);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+/**
+ A task that carries a scheduling priority. When a task implementing this interface is submitted to the
+ {@link ThreadPool#background()} pool, it is queued ahead of tasks with a lower priority. Tasks of equal priority run in
+ submission order.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public interface Prioritized {
+    /**
+     Background work that nobody is waiting on yet (prefetching, cache warming, etc)
+     */
+    int PRIORITY_LOW    = -1;
+
+    /**
+     Default priority of every task that does not specify one
+     */
+    int PRIORITY_NORMAL = 0;
+
+    /**
+     Work a user is actively waiting on
+     */
+    int PRIORITY_HIGH   = 1;
+
+    /**
+     Get the task priority. Larger values run first.
+
+     @return the task priority
+     */
+    int getPriority ();
+}
@@ -0,0 +1,67 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Queue entry for the background pool. Wraps a submitted {@link Runnable} with the key it is ordered by.
+ <p>
+ The key is fixed when the task is queued so the heap never has to be reordered. Without aging the key is simply the
+ priority. With aging, a task is ranked by its submission time minus <code>priority * agingNanos</code>: a task one
+ level below another one is treated as if it had been submitted <code>agingNanos</code> later, so once it has waited
+ that long it is no longer passed over by newer, higher priority work.
+ */
+final class PriorityTask
+  implements Runnable, Comparable<PriorityTask> {
+    private static final AtomicLong SEQUENCE = new AtomicLong ();
+
+    final Runnable task;
+    final long     sequence;
+
+    private final long rank;
+
+    PriorityTask (final Runnable runnable, final long agingNanos) {
+        task = runnable;
+        sequence = SEQUENCE.getAndIncrement ();
+
+        final int priority = runnable instanceof Prioritized
+                             ? ((Prioritized) runnable).getPriority ()
+                             : Prioritized.PRIORITY_NORMAL;
+
+        rank = agingNanos > 0
+               ? System.nanoTime () - priority * agingNanos
+               : -priority;
+    }
+
+    @Override public void run () {
+        task.run ();
+    }
+
+    @Override public int compareTo (@NonNull final PriorityTask other) {
+        final int byRank = compare (rank, other.rank);
+        return 0 != byRank ? byRank : compare (sequence, other.sequence);
+    }
+
+    private static int compare (final long a, final long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+}
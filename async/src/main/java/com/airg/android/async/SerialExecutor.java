@@ -0,0 +1,98 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ An {@link Executor} that runs its tasks one at a time, in the order they were submitted, on threads borrowed from
+ another executor (a strand). Use one per resource that must not be used concurrently (a database handle, a file, a
+ session) instead of a dedicated single thread executor: a strand is a queue and a flag, and only occupies a thread of
+ the shared pool while it has work.
+ <p>
+ Each task happens-before the next one, so state only touched by the strand's tasks needs no further locking. Tasks do
+ not necessarily run on the same thread. A strand with a long backlog gives its thread back every {@link #BATCH_SIZE}
+ tasks so other work on the pool isn't starved. A task that throws does not stall the strand: the remaining tasks are
+ handed back to the pool before the exception is passed on.
+ <p>
+ On a bounded {@link ThreadPool#background()} queue the strand itself is subject to the {@link BackpressurePolicy}. If
+ the pool drops the strand while a task is being submitted, {@link #execute(Runnable)} throws. If the strand is evicted
+ from the queue later on, its queued tasks run once the next task is submitted.
+ <p>
+ Get one from {@link ThreadPool#serial()} or {@link ThreadPool#serial(Executor)}.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class SerialExecutor
+  extends Mailbox<Runnable>
+  implements Executor {
+    /**
+     Maximum number of tasks run before the strand is handed back to the pool
+     */
+    public static final int BATCH_SIZE = 64;
+
+    /**
+     @param runOn
+     executor to borrow threads from, or <code>null</code> for the {@link ThreadPool#background()} pool. The pool is
+     only looked up when the first task is submitted, so strands can be created before {@link ThreadPool#init}.
+     */
+    SerialExecutor (final Executor runOn) {
+        super (runOn, BATCH_SIZE);
+    }
+
+    /**
+     Queue a task to run after all the tasks submitted before it
+
+     @param task
+     task to run
+
+     @throws RejectedExecutionException
+     if the strand had to be scheduled on the pool and the pool rejected or dropped it. The task is not run.
+     */
+    @Override public void execute (@NonNull final Runnable task) {
+        enqueue (task);
+    }
+
+    /**
+     Get the number of tasks waiting to run. Approximate while tasks are being submitted.
+
+     @return number of queued tasks, not counting the one running
+     */
+    public int size () {
+        return pending ();
+    }
+
+    /**
+     Remove a task that hasn't started yet
+
+     @param task
+     task that was passed to {@link #execute(Runnable)}
+
+     @return <code>true</code> if the task was still queued and has been removed
+     */
+    public boolean remove (final Runnable task) {
+        return dequeue (task);
+    }
+
+    @Override void process (final Runnable task) {
+        task.run ();
+    }
+}
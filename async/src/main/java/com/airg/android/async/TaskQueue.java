@@ -0,0 +1,196 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.support.annotation.NonNull;
+
+import com.airg.android.async.promise.AbstractPromise;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Work queue of the {@link BackgroundExecutor}: a {@link PriorityBlockingQueue} with an optional capacity. The capacity
+ is tracked with a {@link Semaphore}: a permit is taken for every queued task and given back whenever a task leaves the
+ queue, so the bound holds even with many concurrent producers.
+ */
+final class TaskQueue
+  extends PriorityBlockingQueue<Runnable> {
+    private static final long serialVersionUID = 1L;
+
+    static final int UNBOUNDED = 0;
+
+    private final Semaphore permits;
+
+    TaskQueue (final int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException ("Invalid queue capacity: " + capacity);
+
+        permits = capacity == UNBOUNDED ? null : new Semaphore (capacity);
+    }
+
+    /**
+     Queue a task, waiting for room if the queue is at capacity.
+     */
+    void putBlocking (final Runnable task) throws InterruptedException {
+        if (null != permits)
+            permits.acquire ();
+
+        super.offer (task);
+    }
+
+    /**
+     Remove the task that was queued first, regardless of its priority.
+
+     @return the removed task or <code>null</code> if the queue is empty
+     */
+    Runnable pollOldest () {
+        PriorityTask oldest = null;
+
+        for (final Runnable task : this) {
+            final PriorityTask queued = (PriorityTask) task;
+
+            if (null == oldest || queued.sequence < oldest.sequence)
+                oldest = queued;
+        }
+
+        return null != oldest && remove (oldest) ? oldest : null;
+    }
+
+    /**
+     Remove the tasks that are done without having run: {@link Future}s and {@link AbstractPromise}s that were
+     cancelled (or failed, or timed out) while queued. Linear in the size of the queue for every task removed, so only
+     meant for a full queue.
+
+     @return the number of tasks removed
+     */
+    int purgeDone () {
+        int purged = 0;
+
+        for (final Runnable queued : this)
+            if (isDone (((PriorityTask) queued).task) && remove (queued))
+                purged++;
+
+        return purged;
+    }
+
+    private static boolean isDone (final Runnable task) {
+        if (task instanceof Future)
+            return ((Future<?>) task).isDone ();
+
+        return task instanceof AbstractPromise && ((AbstractPromise<?>) task).isDone ();
+    }
+
+    /**
+     Find the queue entry of a submitted task
+
+     @return the {@link PriorityTask} wrapping <code>task</code> or <code>null</code> if it isn't queued
+     */
+    PriorityTask find (final Runnable task) {
+        for (final Runnable queued : this) {
+            final PriorityTask entry = (PriorityTask) queued;
+
+            if (entry == task || entry.task == task)
+                return entry;
+        }
+
+        return null;
+    }
+
+    @Override public boolean offer (final Runnable task) {
+        if (null != permits && !permits.tryAcquire ())
+            return false;
+
+        return super.offer (task);
+    }
+
+    @Override public Runnable poll () {
+        return released (super.poll ());
+    }
+
+    @Override public Runnable poll (final long timeout, final TimeUnit unit) throws InterruptedException {
+        return released (super.poll (timeout, unit));
+    }
+
+    @Override public Runnable take () throws InterruptedException {
+        return released (super.take ());
+    }
+
+    @Override public boolean remove (final Object task) {
+        if (!super.remove (task))
+            return false;
+
+        release (1);
+        return true;
+    }
+
+    // drainTo (Collection) is not overridden: it calls this one, so the permits are only given back once
+    @Override public int drainTo (@NonNull final Collection<? super Runnable> sink, final int maxElements) {
+        return release (super.drainTo (sink, maxElements));
+    }
+
+    @Override public void clear () {
+        while (null != poll ()) {
+            // poll() gives the permits back
+        }
+    }
+
+    @Override public int remainingCapacity () {
+        return null == permits ? Integer.MAX_VALUE : permits.availablePermits ();
+    }
+
+    @NonNull @Override public Iterator<Runnable> iterator () {
+        final Iterator<Runnable> iterator = super.iterator ();
+
+        return new Iterator<Runnable> () {
+            private Runnable current;
+
+            @Override public boolean hasNext () {
+                return iterator.hasNext ();
+            }
+
+            @Override public Runnable next () {
+                return current = iterator.next ();
+            }
+
+            @Override public void remove () {
+                // the snapshot iterator can't tell us whether the task was still queued
+                TaskQueue.this.remove (current);
+            }
+        };
+    }
+
+    private Runnable released (final Runnable task) {
+        if (null != task)
+            release (1);
+
+        return task;
+    }
+
+    private int release (final int count) {
+        if (null != permits && count > 0)
+            permits.release (count);
+
+        return count;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.airg.android.async.promise.FuturePromise;
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.PromiseInternals;
+import com.airg.android.async.promise.Promises;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ Keeps track of the tasks and promises started on behalf of a component, so they can all be cancelled at once when the
+ component goes away. Tasks submitted through a scope run on the {@link ThreadPool} as usual. Closing the scope
+ cancels everything that is still pending: queued tasks never run, and cancelled
+ promises let go of their listeners, so nothing keeps a destroyed <code>Activity</code> reachable.
+ <pre>
+ {@code
+ private TaskScope scope;
+
+ protected void onCreate (Bundle savedInstanceState) {
+ super.onCreate (savedInstanceState);
+ scope = TaskScope.bind (this);     // closed in onDestroy, callbacks on the UI thread
+
+ scope.io (new Callable<Bitmap> () { ... })
+ .onComplete (showImage);
+ }
+ }
+ </pre>
+ A closed scope can't be reused: anything submitted to it afterwards is cancelled right away.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class TaskScope
+  implements Closeable {
+    // pending promises only: each one removes itself once it's done, so the scope never holds on to a result
+    private final Set<Promise<?>> tracked = Collections.newSetFromMap (new ConcurrentHashMap<Promise<?>, Boolean> ());
+    private final AtomicBoolean   closed  = new AtomicBoolean ();
+    private final Executor        callbackExecutor;
+
+    /**
+     Create a scope that has to be {@link #close() closed} manually. Callbacks of the tasks it submits run on the
+     thread that completes them.
+     */
+    public TaskScope () {
+        this (null);
+    }
+
+    /**
+     Create a scope that has to be {@link #close() closed} manually
+
+     @param executor
+     executor the callbacks of the tasks submitted through this scope run on
+     */
+    public TaskScope (@Nullable final Executor executor) {
+        callbackExecutor = executor;
+    }
+
+    /**
+     Same as {@link #bind(Activity, Executor) bind (activity, ThreadPool.foreground ())}
+     */
+    public static TaskScope bind (@NonNull final Activity activity) {
+        return bind (activity, ThreadPool.foreground ());
+    }
+
+    /**
+     Create a scope that is closed when an activity is destroyed
+
+     @param activity
+     activity whose destruction closes the scope
+     @param executor
+     executor the callbacks of the tasks submitted through this scope run on
+
+     @return a new scope
+     */
+    public static TaskScope bind (@NonNull final Activity activity, @Nullable final Executor executor) {
+        final TaskScope scope = new TaskScope (executor);
+        final Application application = activity.getApplication ();
+
+        application.registerActivityLifecycleCallbacks (new Application.ActivityLifecycleCallbacks () {
+            @Override public void onActivityDestroyed (final Activity destroyed) {
+                if (destroyed != activity)
+                    return;
+
+                application.unregisterActivityLifecycleCallbacks (this);
+                scope.close ();
+            }
+
+            @Override public void onActivityCreated (final Activity a, final Bundle savedInstanceState) {
+            }
+
+            @Override public void onActivityStarted (final Activity a) {
+            }
+
+            @Override public void onActivityResumed (final Activity a) {
+            }
+
+            @Override public void onActivityPaused (final Activity a) {
+            }
+
+            @Override public void onActivityStopped (final Activity a) {
+            }
+
+            @Override public void onActivitySaveInstanceState (final Activity a, final Bundle outState) {
+            }
+        });
+
+        return scope;
+    }
+
+    /**
+     Execute a {@link Runnable} on the background pool. See {@link ThreadPool#bg(Runnable)}.
+
+     @return a {@link FuturePromise} that completes when the task has run
+     */
+    public FuturePromise<Void> bg (@NonNull final Runnable runnable) {
+        return execute (new FuturePromise<Void> (runnable, null, callbackExecutor), ThreadPool.background ());
+    }
+
+    /**
+     Execute a {@link Callable} on the background pool
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public <T> FuturePromise<T> submit (@NonNull final Callable<T> callable) {
+        return submit (Prioritized.PRIORITY_NORMAL, callable);
+    }
+
+    /**
+     Execute a {@link Callable} on the background pool with a priority. See
+     {@link ThreadPool#submit(int, Callable)}.
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public <T> FuturePromise<T> submit (final int priority, @NonNull final Callable<T> callable) {
+        return execute (new FuturePromise<> (priority, callable, callbackExecutor), ThreadPool.background ());
+    }
+
+    /**
+     Execute a blocking {@link Runnable} on the I/O pool. See {@link ThreadPool#io(Runnable)}.
+
+     @return a {@link FuturePromise} that completes when the task has run
+     */
+    public FuturePromise<Void> io (@NonNull final Runnable runnable) {
+        return execute (new FuturePromise<Void> (runnable, null, callbackExecutor), ThreadPool.io ());
+    }
+
+    /**
+     Execute a blocking {@link Callable} on the I/O pool
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public <T> FuturePromise<T> io (@NonNull final Callable<T> callable) {
+        return execute (new FuturePromise<> (callable, callbackExecutor), ThreadPool.io ());
+    }
+
+    /**
+     Execute a {@link Callable} on the background pool once the delay has passed. See
+     {@link ThreadPool#schedule(long, TimeUnit, Callable)}. Callbacks run on the thread that completes the task, not
+     on this scope's executor.
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public <T> FuturePromise<T> schedule (final long delay, @NonNull final TimeUnit unit,
+                                          @NonNull final Callable<T> callable) {
+        return track (ThreadPool.schedule (delay, unit, callable));
+    }
+
+    /**
+     Add a promise that was started elsewhere to this scope
+
+     @param promise
+     promise to cancel when the scope is closed
+
+     @return <code>promise</code>, cancelled already if the scope is closed
+     */
+    public <P extends Promise<?>> P track (@NonNull final P promise) {
+        if (closed.get ()) {
+            promise.cancel ();
+            return promise;
+        }
+
+        tracked.add (promise);
+
+        if (closed.get ())
+            cancelAll (); // close () may have emptied the set before we added to it
+        else
+            // doesn't count as interest in the result: cancelling a chain built on the promise still cancels it
+            Promises.whenDone (promise, new Runnable () {
+                @Override public void run () {
+                    tracked.remove (promise);
+                }
+            });
+
+        return promise;
+    }
+
+    /**
+     @return <code>true</code> once the scope has been closed
+     */
+    public boolean isClosed () {
+        return closed.get ();
+    }
+
+    /**
+     @return the number of tracked promises that are still pending
+     */
+    public int size () {
+        return tracked.size ();
+    }
+
+    /**
+     Cancel all pending tasks and promises of this scope. Does nothing if the scope is already closed.
+     */
+    @Override
+    public void close () {
+        if (closed.compareAndSet (false, true))
+            cancelAll ();
+    }
+
+    <T> FuturePromise<T> execute (final FuturePromise<T> task, final Executor executor) {
+        track (task);
+
+        // the scope may have been closed in the meantime
+        if (!task.isDone ())
+            try {
+                executor.execute (task);
+            } catch (RejectedExecutionException e) {
+                // it would stay tracked forever: fail it, which also stops tracking it
+                PromiseInternals.fail (task, e);
+            }
+
+        return task;
+    }
+
+    private void cancelAll () {
+        for (final Iterator<Promise<?>> iterator = tracked.iterator (); iterator.hasNext (); ) {
+            final Promise<?> promise = iterator.next ();
+            iterator.remove ();
+            promise.cancel ();
+        }
+    }
+}
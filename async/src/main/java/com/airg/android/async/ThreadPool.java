@@ -18,15 +18,25 @@
 
 package com.airg.android.async;
 
+import android.os.Build;
+import android.os.Process;
 import android.support.annotation.NonNull;
 
+import com.airg.android.async.promise.FuturePromise;
+import com.airg.android.async.promise.Promise;
+import com.airg.android.async.promise.PromiseInternals;
+import com.airg.android.async.promise.SimplePromise;
+import com.airg.android.device.ApiLevel;
 import com.airg.android.device.Device;
 
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -35,18 +45,22 @@ import lombok.Synchronized;
 
 /**
  This class contains an {@link Executor} that executes code on the UI Thread and an {@link ExecutorService} that allows
- for code to be executed on a background thread via a Threadpool. This class does not require a configuration (i.e. is
+ for code to be executed on a background thread via a Threadpool. CPU bound work belongs on the {@link #background()}
+ pool, which is sized to the number of cores. Blocking work (disk, network) belongs on the larger {@link #io()} pool so
+ it does not occupy the cores compute tasks are waiting for. This class does not require a configuration (i.e. is
  usable immediately without calling {@link ThreadPool#init(Config)}), but if you'd like to override the default
  behavior, you may do so as long as the initialization is done before any tasks have been submitted for background
- execution.
+ execution. Delayed and periodic tasks are started by a single shared {@link #timer()} and run on the background pool.
 
  @author Mahram Z. Foadi
  */
 @SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
 public final class ThreadPool {
 
-    private static final Executor UI = new UIThreadExecutor ();
-    private static ExecutorService BACKGROUND;
+    // written once under the init lock and read without locking afterwards
+    private static volatile Executor        UI = new UIThreadExecutor ();
+    private static volatile ExecutorService BACKGROUND;
+    private static volatile ExecutorService IO;
 
     /**
      Submit a {@link Runnable} to be executed on the UI thread.
@@ -63,7 +77,6 @@ public final class ThreadPool {
 
      @param runnable
      */
-    @Synchronized
     public static void bg (@NonNull final Runnable runnable) {
         background ().execute (runnable);
     }
@@ -72,7 +85,6 @@ public final class ThreadPool {
      Executes a {@link Runnable} on the background thread.
      See {@link ExecutorService#submit(Runnable)}
      */
-    @Synchronized
     public static Future<?> submit (@NonNull final Runnable runnable) {
         return background ().submit (runnable);
     }
@@ -81,7 +93,6 @@ public final class ThreadPool {
      Executes a {@link Runnable} on the background thread.
      See {@link ExecutorService#submit(Callable)}
      */
-    @Synchronized
     public static <T> Future<T> submit (@NonNull final Callable<T> callable) {
         return background ().submit (callable);
     }
@@ -90,22 +101,304 @@ public final class ThreadPool {
      Executes a {@link Runnable} on the background thread.
      See {@link ExecutorService#submit(Runnable, Object)}
      */
-    @Synchronized
     public static <T> Future<T> submit (@NonNull final Runnable runnable, T result) {
         return background ().submit (runnable, result);
     }
 
+    /**
+     Executes a {@link Callable} on the background thread, queued ahead of any pending tasks with a lower priority.
+     Tasks with the same priority run in submission order. Lower priority tasks are not starved: see
+     {@link Config.ConfigBuilder#priorityAgingMillis(long)}. Priorities are ignored when the background pool is in
+     {@link Config.ConfigBuilder#workStealing(boolean) work-stealing} mode.
+
+     @param priority
+     task priority. See {@link Prioritized}
+     @param callable
+     task to execute
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public static <T> FuturePromise<T> submit (final int priority, @NonNull final Callable<T> callable) {
+        final FuturePromise<T> task = new FuturePromise<> (priority, callable);
+        background ().execute (task);
+        return task;
+    }
+
+    /**
+     Submit a CPU bound {@link Runnable} for background execution. Same as {@link #bg(Runnable)}.
+
+     @param runnable
+     task to execute
+     */
+    public static void cpu (@NonNull final Runnable runnable) {
+        background ().execute (runnable);
+    }
+
+    /**
+     Submit a CPU bound {@link Callable} for background execution. Same as {@link #submit(Callable)}.
+
+     @param callable
+     task to execute
+
+     @return a {@link Future} representing the pending result
+     */
+    public static <T> Future<T> cpu (@NonNull final Callable<T> callable) {
+        return background ().submit (callable);
+    }
+
+    /**
+     Submit a {@link Runnable} that blocks (disk, network, etc) for execution on the I/O pool.
+
+     @param runnable
+     task to execute
+     */
+    public static void io (@NonNull final Runnable runnable) {
+        io ().execute (runnable);
+    }
+
+    /**
+     Submit a {@link Callable} that blocks (disk, network, etc) for execution on the I/O pool.
+
+     @param callable
+     task to execute
+
+     @return a {@link Future} representing the pending result
+     */
+    public static <T> Future<T> io (@NonNull final Callable<T> callable) {
+        return io ().submit (callable);
+    }
+
+    /**
+     Create a {@link SerialExecutor} on the background pool: tasks submitted to it run one at a time, in order, without
+     a thread of their own. The pool is not initialized until the first task is submitted.
+
+     @return a new strand
+     */
+    public static SerialExecutor serial () {
+        return new SerialExecutor (null);
+    }
+
+    /**
+     Create a {@link SerialExecutor} that borrows its threads from <code>executor</code>, i.e. {@link #io()} for a
+     strand of blocking tasks.
+
+     @param executor
+     executor to run tasks on
+
+     @return a new strand
+     */
+    public static SerialExecutor serial (@NonNull final Executor executor) {
+        //noinspection ConstantConditions
+        if (null == executor)
+            throw new NullPointerException ("executor");
+
+        return new SerialExecutor (executor);
+    }
+
+    /**
+     Execute a {@link Callable} on the background thread once the delay has passed. Cancelling the returned promise
+     before then removes the task from the timer.
+
+     @param delay
+     time to wait before the task is queued
+     @param unit
+     unit of <code>delay</code>
+     @param callable
+     task to execute
+
+     @return a {@link FuturePromise} representing the pending result
+     */
+    public static <T> FuturePromise<T> schedule (final long delay, @NonNull final TimeUnit unit,
+                                                 @NonNull final Callable<T> callable) {
+        return scheduleTask (delay, unit, new FuturePromise<> (callable));
+    }
+
+    /**
+     Execute a {@link Runnable} on the background thread once the delay has passed. Cancelling the returned promise
+     before then removes the task from the timer.
+
+     @param delay
+     time to wait before the task is queued
+     @param unit
+     unit of <code>delay</code>
+     @param runnable
+     task to execute
+
+     @return a {@link FuturePromise} that completes when the task has run
+     */
+    public static FuturePromise<Void> schedule (final long delay, @NonNull final TimeUnit unit,
+                                                @NonNull final Runnable runnable) {
+        return scheduleTask (delay, unit, new FuturePromise<Void> (runnable, null));
+    }
+
+    /**
+     Execute a {@link Runnable} on the background thread periodically. Runs start <code>period</code> apart, measured
+     from the start of the first run. A run that takes longer than the period delays the next one: runs never overlap.
+
+     @param initialDelay
+     time to wait before the first run
+     @param period
+     time between the start of consecutive runs
+     @param unit
+     unit of <code>initialDelay</code> and <code>period</code>
+     @param runnable
+     task to execute
+
+     @return a {@link SimplePromise} that never completes on its own. Call {@link SimplePromise#cancelled()} to stop
+     the task. The promise fails if a run throws or the pool rejects it, and is cancelled if a bounded pool drops a
+     run. No further runs are made in either case.
+     */
+    public static SimplePromise<Void> scheduleAtFixedRate (final long initialDelay, final long period,
+                                                           @NonNull final TimeUnit unit,
+                                                           @NonNull final Runnable runnable) {
+        return new PeriodicTask (runnable, period, unit, true, timer (), background ()).start (initialDelay, unit);
+    }
+
+    /**
+     Execute a {@link Runnable} on the background thread periodically, waiting <code>delay</code> between the end of
+     one run and the start of the next.
+
+     @param initialDelay
+     time to wait before the first run
+     @param delay
+     time between the end of a run and the start of the next
+     @param unit
+     unit of <code>initialDelay</code> and <code>delay</code>
+     @param runnable
+     task to execute
+
+     @return a {@link SimplePromise} that never completes on its own. Call {@link SimplePromise#cancelled()} to stop
+     the task. The promise fails if a run throws or the pool rejects it, and is cancelled if a bounded pool drops a
+     run. No further runs are made in either case.
+     */
+    public static SimplePromise<Void> scheduleWithFixedDelay (final long initialDelay, final long delay,
+                                                              @NonNull final TimeUnit unit,
+                                                              @NonNull final Runnable runnable) {
+        return new PeriodicTask (runnable, delay, unit, false, timer (), background ()).start (initialDelay, unit);
+    }
+
+    /**
+     Transform every item of a list on the background pool. The list is split into chunks that the pool threads take
+     turns claiming, so there is one task per thread rather than one per item. Lists of up to 16 items are transformed
+     on the calling thread.
+
+     @param items
+     items to transform. Must not be modified until the returned promise is done.
+     @param transform
+     transform to apply to each item. Called concurrently from several threads.
+
+     @return a promise of the transformed items, in list order. Fails with the first exception <code>transform</code>
+     throws; the remaining items are skipped. Cancelling it skips the remaining items as well.
+     */
+    public static <T, R> Promise<List<R>> parallelMap (
+      @NonNull final List<? extends T> items, @NonNull final Promise.Transform<? super T, ? extends R> transform) {
+        return parallelMap (items, DEFAULT_MIN_CHUNK_SIZE, transform);
+    }
+
+    /**
+     Same as {@link #parallelMap(List, Promise.Transform)}, with a different chunk size. Use a small one if each item
+     takes a long time (i.e. 1 to hash files), a large one if the transform is cheap.
+
+     @param items
+     items to transform. Must not be modified until the returned promise is done.
+     @param minChunkSize
+     smallest number of items a thread claims at a time. Lists that fit in one chunk are transformed on the calling
+     thread.
+     @param transform
+     transform to apply to each item. Called concurrently from several threads.
+
+     @return a promise of the transformed items, in list order
+     */
+    public static <T, R> Promise<List<R>> parallelMap (
+      @NonNull final List<? extends T> items, final int minChunkSize,
+      @NonNull final Promise.Transform<? super T, ? extends R> transform) {
+        final ExecutorService executor = background ();
+        return new ParallelTask.Map<T, R> (items, minChunkSize, transform).start (executor, parallelism (executor));
+    }
+
+    /**
+     Run an action on every item of a list on the background pool. See {@link #parallelMap(List, Promise.Transform)}.
+
+     @param items
+     items to process. Must not be modified until the returned promise is done.
+     @param action
+     action to run on each item. Called concurrently from several threads.
+
+     @return a promise that succeeds once every item has been processed, or fails with the first exception
+     <code>action</code> throws
+     */
+    public static <T> Promise<Void> parallelForEach (@NonNull final List<? extends T> items,
+                                                     @NonNull final Action<? super T> action) {
+        return parallelForEach (items, DEFAULT_MIN_CHUNK_SIZE, action);
+    }
+
+    /**
+     Same as {@link #parallelForEach(List, Action)}, with a different chunk size
+
+     @param items
+     items to process. Must not be modified until the returned promise is done.
+     @param minChunkSize
+     smallest number of items a thread claims at a time. Lists that fit in one chunk are processed on the calling
+     thread.
+     @param action
+     action to run on each item. Called concurrently from several threads.
+
+     @return a promise that succeeds once every item has been processed
+     */
+    public static <T> Promise<Void> parallelForEach (@NonNull final List<? extends T> items, final int minChunkSize,
+                                                     @NonNull final Action<? super T> action) {
+        final ExecutorService executor = background ();
+        return new ParallelTask.ForEach<T> (items, minChunkSize, action).start (executor, parallelism (executor));
+    }
+
+    /**
+     Remove a task from the {@link #background()} or {@link #io()} queue, so it never runs. This scans the queue. A
+     cancelled {@link FuturePromise} or {@link com.airg.android.async.promise.AbstractPromise} doesn't need it: it
+     stays queued, but does nothing once it comes up.
+
+     @param task
+     task that was passed to <code>execute</code> or <code>submit</code>
+
+     @return <code>true</code> if the task was still queued and has been removed
+     */
+    public static boolean remove (@NonNull final Runnable task) {
+        // don't create the pools just to find out they're empty
+        return remove (BACKGROUND, task) || remove (IO, task);
+    }
+
+    private static boolean remove (final ExecutorService executor, final Runnable task) {
+        return executor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) executor).remove (task);
+    }
+
+    /**
+     Get the shared {@link TimingWheel}. Its thread is only started when the first timeout is scheduled. Expired
+     tasks run on the timer thread, so they should only hand work off to one of the pools.
+
+     @return the timer used by the <code>schedule*</code> methods
+     */
+    public static TimingWheel timer () {
+        return TimerHolder.TIMER;
+    }
+
     /**
      Get the background {@link ExecutorService}
 
      @return the current background <code>ExecutorService</code>
      */
-    @Synchronized
     public static ExecutorService background () {
-        if (null == BACKGROUND)
-            init (null);
+        final ExecutorService executor = BACKGROUND;
+        return null == executor ? lazyInit () : executor;
+    }
 
-        return BACKGROUND;
+    /**
+     Get the I/O {@link ExecutorService}. Its threads are created on demand, up to the configured I/O pool size, and
+     are retired after they have been idle for a while.
+
+     @return the current I/O <code>ExecutorService</code>
+     */
+    public static ExecutorService io () {
+        final ExecutorService executor = IO;
+        return null == executor ? lazyInitIO () : executor;
     }
 
     /**
@@ -113,7 +406,6 @@ public final class ThreadPool {
 
      @return the UI Thread <code>Executor</code>
      */
-    @Synchronized
     public static Executor foreground () {
         return UI;
     }
@@ -125,7 +417,8 @@ public final class ThreadPool {
      Threadpool configuration
 
      @throws IllegalStateException
-     if the Threadpool has already been initialized via either calling {@link #init(Config)} or {@link #background()}
+     if the Threadpool has already been initialized via either calling {@link #init(Config)}, {@link #background()}
+     or {@link #io()}
      */
     @Synchronized
     public static void init (final Config config) {
@@ -135,21 +428,138 @@ public final class ThreadPool {
 
         final Config initConfig = null == config ? new Config () : config;
 
-        final int poolSize = initConfig.overridePoolSize > 0
-                             ? initConfig.overridePoolSize
-                             : Math.max (1, Device.CPU_COUNT - 1);
+        if (initConfig.uiBatching || initConfig.asyncUIMessages)
+            UI = new UIThreadExecutor (initConfig.uiBatching, initConfig.uiFrameBudgetMillis,
+                                       initConfig.asyncUIMessages);
+
+        // IO first: publishing BACKGROUND marks the pool as initialized
+        IO = newIOExecutor (initConfig);
+        BACKGROUND = newCPUExecutor (initConfig);
+    }
+
+    static ExecutorService newCPUExecutor (final Config config) {
+        final PoolSizer sizer = config.adaptiveMaxPoolSize > 0
+                                ? new PoolSizer (config.adaptiveMinPoolSize, config.adaptiveMaxPoolSize,
+                                                 Device.CPU_COUNT, PoolSizer.DEFAULT_WINDOW_NANOS)
+                                : null;
+
+        final int defaultPoolSize = config.overridePoolSize > 0
+                                    ? config.overridePoolSize
+                                    : Math.max (1, Device.CPU_COUNT - 1);
+        final int poolSize = null == sizer ? defaultPoolSize : sizer.clamp (defaultPoolSize);
 
         if (poolSize <= 0)
             throw new IllegalArgumentException ("Invalid pool size: " + poolSize);
 
-        BACKGROUND = Executors.newFixedThreadPool (poolSize,
-                                                   new CPUWorkerThreadFactory (initConfig.workerThreadNamePrefix,
-                                                                               initConfig.backgroundThreadPriority));
+        if (config.workStealing && ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP))
+            return WorkStealingThreadFactory.newPool (poolSize, config.workerThreadNamePrefix,
+                                                      config.backgroundThreadPriority,
+                                                      config.backgroundProcessPriority);
+
+        if (config.priorityAgingMillis < 0)
+            throw new IllegalArgumentException ("Invalid priority aging: " + config.priorityAgingMillis);
+
+        return new BackgroundExecutor (poolSize,
+                                       new CPUWorkerThreadFactory (config.workerThreadNamePrefix,
+                                                                   config.backgroundThreadPriority,
+                                                                   config.backgroundProcessPriority),
+                                       config.priorityAgingMillis,
+                                       config.queueCapacity,
+                                       config.backpressurePolicy,
+                                       sizer);
+    }
+
+    static ExecutorService newIOExecutor (final Config config) {
+        final int poolSize = config.ioPoolSize > 0
+                             ? config.ioPoolSize
+                             : Math.max (MIN_IO_POOL_SIZE, Device.CPU_COUNT * IO_THREADS_PER_CPU);
+
+        if (config.ioKeepAliveSeconds <= 0)
+            throw new IllegalArgumentException ("Invalid I/O thread keep alive: " + config.ioKeepAliveSeconds);
+
+        // core == max with core timeout: grows one thread per task up to poolSize, queues beyond that, and shrinks
+        // back to zero threads when idle
+        final ThreadPoolExecutor executor =
+          new ThreadPoolExecutor (poolSize, poolSize, config.ioKeepAliveSeconds, TimeUnit.SECONDS,
+                                  new LinkedBlockingQueue<Runnable> (),
+                                  new CPUWorkerThreadFactory (config.ioThreadNamePrefix,
+                                                              config.backgroundThreadPriority,
+                                                              config.ioProcessPriority));
+        executor.allowCoreThreadTimeOut (true);
+        return executor;
+    }
+
+    /**
+     Slow path of {@link #background()}: only taken until the pool has been created. Once {@link #BACKGROUND} is
+     published, callers never reach this lock again.
+     */
+    @Synchronized
+    private static ExecutorService lazyInit () {
+        if (null == BACKGROUND)
+            init (null);
+
+        return BACKGROUND;
+    }
+
+    @Synchronized
+    private static ExecutorService lazyInitIO () {
+        if (null == BACKGROUND)
+            init (null);
+
+        return IO;
+    }
+
+    private static <T> FuturePromise<T> scheduleTask (final long delay, final TimeUnit unit,
+                                                     final FuturePromise<T> task) {
+        PromiseInternals.bindTimeout (task, timer ().schedule (new Runnable () {
+            @Override public void run () {
+                if (!task.isDone ())
+                    background ().execute (task);
+            }
+        }, delay, unit));
+
+        return task;
+    }
+
+    private static int parallelism (final ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor
+               ? ((ThreadPoolExecutor) executor).getMaximumPoolSize ()
+               : Device.CPU_COUNT;
     }
 
-    private static final String DEFAULT_THREAD_PREFIX   = "AsyncWorker";
-    private static final int    DEFAULT_THREAD_PRIORITY = Thread.NORM_PRIORITY;
-    private static final int    NO_POOL_SIZE_OVERRIDE   = 0;
+    // created on first use; independent of the pool configuration
+    private static final class TimerHolder {
+        static final TimingWheel TIMER = new TimingWheel (TIMER_TICK_MS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE,
+                                                          new CPUWorkerThreadFactory (DEFAULT_TIMER_THREAD_NAME));
+    }
+
+    private static final String DEFAULT_THREAD_PREFIX     = "AsyncWorker";
+    private static final String DEFAULT_IO_THREAD_PREFIX  = "AsyncIO";
+    private static final String DEFAULT_TIMER_THREAD_NAME = "AsyncTimer";
+    private static final long   TIMER_TICK_MS             = 10;
+    private static final int    TIMER_WHEEL_SIZE          = 512;
+    private static final int    DEFAULT_THREAD_PRIORITY   = Thread.NORM_PRIORITY;
+    private static final int    NO_POOL_SIZE_OVERRIDE     = 0;
+    private static final int    MIN_IO_POOL_SIZE          = 8;
+    private static final int    IO_THREADS_PER_CPU        = 4;
+    private static final long   DEFAULT_IO_KEEP_ALIVE_SEC = 30;
+    private static final long   DEFAULT_PRIORITY_AGING_MS = 1000;
+    private static final int    DEFAULT_PROCESS_PRIORITY  = CPUWorkerThreadFactory.NO_PROCESS_PRIORITY;
+    private static final int    DEFAULT_MIN_CHUNK_SIZE    = 16;
+
+    /**
+     Operation run on each item by {@link #parallelForEach(List, Action)}
+
+     @param <T>
+     item type
+     */
+    public interface Action<T> {
+        /**
+         @param item
+         item to process
+         */
+        void apply (T item) throws Exception;
+    }
 
     /**
      Threadpool configuration. Use {@link ThreadPool.Config.ConfigBuilder} to create a different configuration.
@@ -157,9 +567,29 @@ public final class ThreadPool {
     @NoArgsConstructor (access = AccessLevel.PRIVATE)
     @AllArgsConstructor (access = AccessLevel.PACKAGE)
     public static class Config {
-        private String workerThreadNamePrefix   = DEFAULT_THREAD_PREFIX;
-        private int    overridePoolSize         = NO_POOL_SIZE_OVERRIDE;
-        private int    backgroundThreadPriority = DEFAULT_THREAD_PRIORITY;
+        private String             workerThreadNamePrefix    = DEFAULT_THREAD_PREFIX;
+        private int                overridePoolSize          = NO_POOL_SIZE_OVERRIDE;
+        private int                backgroundThreadPriority  = DEFAULT_THREAD_PRIORITY;
+        private String             ioThreadNamePrefix        = DEFAULT_IO_THREAD_PREFIX;
+        private int                ioPoolSize                = NO_POOL_SIZE_OVERRIDE;
+        private long               ioKeepAliveSeconds        = DEFAULT_IO_KEEP_ALIVE_SEC;
+        private long               priorityAgingMillis       = DEFAULT_PRIORITY_AGING_MS;
+        private boolean            workStealing              = false;
+        private int                queueCapacity             = TaskQueue.UNBOUNDED;
+        private BackpressurePolicy backpressurePolicy        = BackpressurePolicy.FAIL;
+        private int                adaptiveMinPoolSize       = NO_POOL_SIZE_OVERRIDE;
+        private int                adaptiveMaxPoolSize       = NO_POOL_SIZE_OVERRIDE;
+        private int                backgroundProcessPriority = DEFAULT_PROCESS_PRIORITY;
+        private int                ioProcessPriority         = DEFAULT_PROCESS_PRIORITY;
+        private boolean            uiBatching                = false;
+        private long               uiFrameBudgetMillis       = UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS;
+        private boolean            asyncUIMessages           = false;
+
+        /**
+         Use with {@link ConfigBuilder#backgroundProcessPriority(int)} or {@link ConfigBuilder#ioProcessPriority(int)}
+         to leave the Linux priority of the worker threads untouched
+         */
+        public static final int KEEP_PROCESS_PRIORITY = CPUWorkerThreadFactory.NO_PROCESS_PRIORITY;
 
         /**
          Get a new {@link ConfigBuilder}
@@ -174,9 +604,23 @@ public final class ThreadPool {
          Threadpool {@link Config} builder. Use to customize the behavior of the {@link ThreadPool} instance.
          */
         public static class ConfigBuilder {
-            private String prefix         = DEFAULT_THREAD_PREFIX;
-            private int    poolSize       = NO_POOL_SIZE_OVERRIDE;
-            private int    threadPriority = DEFAULT_THREAD_PRIORITY;
+            private String             prefix            = DEFAULT_THREAD_PREFIX;
+            private int                poolSize          = NO_POOL_SIZE_OVERRIDE;
+            private int                threadPriority    = DEFAULT_THREAD_PRIORITY;
+            private String             ioPrefix          = DEFAULT_IO_THREAD_PREFIX;
+            private int                ioPoolSize        = NO_POOL_SIZE_OVERRIDE;
+            private long               ioKeepAlive       = DEFAULT_IO_KEEP_ALIVE_SEC;
+            private long               priorityAging     = DEFAULT_PRIORITY_AGING_MS;
+            private boolean            workStealing      = false;
+            private int                queueCapacity     = TaskQueue.UNBOUNDED;
+            private BackpressurePolicy backpressure      = BackpressurePolicy.FAIL;
+            private int                adaptiveMin       = NO_POOL_SIZE_OVERRIDE;
+            private int                adaptiveMax       = NO_POOL_SIZE_OVERRIDE;
+            private int                bgProcessPriority = DEFAULT_PROCESS_PRIORITY;
+            private int                ioProcessPriority = DEFAULT_PROCESS_PRIORITY;
+            private boolean            uiBatching        = false;
+            private long               uiFrameBudget     = UIThreadExecutor.DEFAULT_FRAME_BUDGET_MS;
+            private boolean            asyncUIMessages   = false;
 
             ConfigBuilder () {
             }
@@ -221,13 +665,219 @@ public final class ThreadPool {
                 return this;
             }
 
+            /**
+             The thread name prefix for the I/O threads. Default is <code>AsyncIO</code>
+
+             @param ioThreadNamePrefix
+             override prefix value
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder ioThreadNamePrefix (final String ioThreadNamePrefix) {
+                this.ioPrefix = ioThreadNamePrefix;
+                return this;
+            }
+
+            /**
+             Maximum number of threads in the I/O pool. Defaults to 4 threads per core with a minimum of 8. I/O
+             threads spend most of their time waiting, so this can safely be much larger than the core count.
+
+             @param ioPoolSize
+             custom value
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder ioPoolSize (final int ioPoolSize) {
+                this.ioPoolSize = ioPoolSize;
+                return this;
+            }
+
+            /**
+             How long an idle I/O thread is kept around before it is retired. Default is 30 seconds.
+
+             @param ioKeepAliveSeconds
+             idle time, in seconds
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder ioKeepAliveSeconds (final long ioKeepAliveSeconds) {
+                this.ioKeepAlive = ioKeepAliveSeconds;
+                return this;
+            }
+
+            /**
+             How long a queued background task has to wait to be promoted by one priority level. A
+             {@link Prioritized#PRIORITY_LOW} task will run before {@link Prioritized#PRIORITY_NORMAL} tasks that
+             were submitted more than this long after it. Default is 1000ms. Use <code>0</code> to disable aging, in
+             which case a steady stream of higher priority work can delay lower priority tasks indefinitely.
+
+             @param priorityAgingMillis
+             wait time per priority level, in milliseconds
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder priorityAgingMillis (final long priorityAgingMillis) {
+                this.priorityAging = priorityAgingMillis;
+                return this;
+            }
+
+            /**
+             Back the {@link ThreadPool#background()} pool with a work-stealing <code>ForkJoinPool</code> instead of a
+             single shared queue. Each worker keeps its own task deque, so tasks that submit subtasks (i.e. a list load
+             that fans out into thumbnail decodes) don't contend on one queue lock. Task priorities are not supported
+             in this mode. Requires API 21; ignored on older devices. Default is <code>false</code>.
+
+             @param workStealing
+             <code>true</code> to use a work-stealing pool
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder workStealing (final boolean workStealing) {
+                this.workStealing = workStealing;
+                return this;
+            }
+
+            /**
+             Limit the number of tasks waiting in the {@link ThreadPool#background()} queue. Without a limit, a burst of
+             submissions (i.e. during a fast scroll) can queue thousands of tasks that are stale by the time they run.
+             What happens to tasks that don't fit is decided by the {@link #backpressurePolicy(BackpressurePolicy)}.
+             Ignored in {@link #workStealing(boolean) work-stealing} mode. Default is <code>0</code> (unbounded).
+
+             @param queueCapacity
+             maximum number of queued tasks or <code>0</code> for no limit
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder queueCapacity (final int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+                return this;
+            }
+
+            /**
+             What to do with background tasks that don't fit in the queue. Only used if a
+             {@link #queueCapacity(int) queue capacity} is set. Default is {@link BackpressurePolicy#FAIL}.
+
+             @param backpressurePolicy
+             the policy to apply
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder backpressurePolicy (final BackpressurePolicy backpressurePolicy) {
+                this.backpressure = backpressurePolicy;
+                return this;
+            }
+
+            /**
+             Let the {@link ThreadPool#background()} pool resize itself between the given bounds. The pool measures
+             how long its workers spend running on the CPU versus waiting, and grows when tasks mostly wait (so the
+             cores stay busy) or shrinks back toward one thread per core when tasks are CPU bound. The pool starts at
+             the {@link #overridePoolSize(int) regular size}, clamped to the bounds. Ignored in
+             {@link #workStealing(boolean) work-stealing} mode. Off by default.
+
+             @param minPoolSize
+             smallest allowed pool size. Must be at least 1.
+             @param maxPoolSize
+             largest allowed pool size. Must not be smaller than <code>minPoolSize</code>.
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder adaptivePoolSize (final int minPoolSize, final int maxPoolSize) {
+                this.adaptiveMin = minPoolSize;
+                this.adaptiveMax = maxPoolSize;
+                return this;
+            }
+
+            /**
+             Linux thread priority (nice value) of the {@link ThreadPool#background()} workers. Unlike the Java
+             priority, this is what the kernel scheduler uses, so it decides whether the render thread wins when it
+             competes with the workers for a core. {@link Process#THREAD_PRIORITY_BACKGROUND} keeps the workers out
+             of the way of the UI. Default is {@link #KEEP_PROCESS_PRIORITY}.
+
+             @param backgroundProcessPriority
+             a value from {@link Process#THREAD_PRIORITY_URGENT_AUDIO} (-19) to {@link Process#THREAD_PRIORITY_LOWEST}
+             (19), or {@link #KEEP_PROCESS_PRIORITY} to leave the workers at the priority they inherit
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder backgroundProcessPriority (final int backgroundProcessPriority) {
+                this.bgProcessPriority = backgroundProcessPriority;
+                return this;
+            }
+
+            /**
+             Linux thread priority (nice value) of the {@link ThreadPool#io()} workers. Default is
+             {@link #KEEP_PROCESS_PRIORITY}.
+
+             @param ioProcessPriority
+             a value from {@link Process#THREAD_PRIORITY_URGENT_AUDIO} (-19) to {@link Process#THREAD_PRIORITY_LOWEST}
+             (19), or {@link #KEEP_PROCESS_PRIORITY} to leave the workers at the priority they inherit
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder ioProcessPriority (final int ioProcessPriority) {
+                this.ioProcessPriority = ioProcessPriority;
+                return this;
+            }
+
+            /**
+             Batch the tasks submitted to {@link ThreadPool#foreground()} from background threads. Instead of one main
+             thread message per task, tasks are queued and run from a single message, so a burst of completing
+             promises wakes the main thread once. A batch that exceeds its {@link #uiFrameBudgetMillis(long) frame
+             budget} yields and the remaining tasks run after the next frame. Default is <code>false</code>.
+
+             @param uiBatching
+             <code>true</code> to batch foreground tasks
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder uiBatching (final boolean uiBatching) {
+                this.uiBatching = uiBatching;
+                return this;
+            }
+
+            /**
+             How long a batch of foreground tasks may run before yielding to the next frame. Only used with
+             {@link #uiBatching(boolean)}. Default is 8ms, half a frame at 60fps. A single task that runs longer than
+             the budget is not interrupted.
+
+             @param uiFrameBudgetMillis
+             time budget per batch, in milliseconds
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder uiFrameBudgetMillis (final long uiFrameBudgetMillis) {
+                this.uiFrameBudget = uiFrameBudgetMillis;
+                return this;
+            }
+
+            /**
+             Deliver {@link ThreadPool#foreground()} tasks as asynchronous messages. While a layout traversal is
+             pending, the main thread only handles asynchronous messages, so ordinary posts can wait a frame or more
+             behind it. Asynchronous ones are delivered right away, which helps latency critical results. They are no
+             longer ordered with messages sent through other <code>Handler</code>s and they run before the pending
+             frame, so keep these tasks short. Requires API 22; ignored on older devices. Default is
+             <code>false</code>.
+
+             @param asyncUIMessages
+             <code>true</code> to send asynchronous messages
+
+             @return this builder instance
+             */
+            public Config.ConfigBuilder asyncUIMessages (final boolean asyncUIMessages) {
+                this.asyncUIMessages = asyncUIMessages;
+                return this;
+            }
+
             /**
              Create the specified configuration parameters.
 
              @return the generated {@link Config}
              */
             public Config build () {
-                return new Config (prefix, poolSize, threadPriority);
+                return new Config (prefix, poolSize, threadPriority, ioPrefix, ioPoolSize, ioKeepAlive,
+                                   priorityAging, workStealing, queueCapacity, backpressure,
+                                   adaptiveMin, adaptiveMax, bgProcessPriority, ioProcessPriority,
+                                   uiBatching, uiFrameBudget, asyncUIMessages);
             }
         }
     }
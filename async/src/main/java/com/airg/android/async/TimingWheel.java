@@ -0,0 +1,377 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ A hashed timing wheel: a single timer thread for any number of pending timeouts. Use the shared instance returned by
+ {@link ThreadPool#timer()}.
+ <p>
+ Time is divided into ticks. A timeout is hashed into the bucket of the tick it expires on, so scheduling and
+ cancelling are O(1) no matter how many timeouts are pending, and the timer thread only ever looks at one bucket per
+ tick. The price is precision: timeouts fire at the end of their tick, i.e. up to one tick late.
+ <p>
+ The timer thread does not tick while it has nothing to do: it parks while no timeouts are pending and, as long as only
+ a few are, sleeps straight through to the earliest deadline. A periodic task that runs every few minutes therefore
+ doesn't keep the device waking up every tick.
+ <p>
+ Expired tasks run on the timer thread and must be short. Hand anything longer off to another executor (that's what
+ {@link ThreadPool#schedule(long, TimeUnit, Runnable)} does). Exceptions thrown by a task are discarded.
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class TimingWheel {
+    /**
+     A pending timer task
+     */
+    public interface Timeout {
+        /**
+         Prevent the task from running, if it hasn't already.
+
+         @return <code>true</code> if the task was cancelled, <code>false</code> if it already ran or was cancelled
+         */
+        boolean cancel ();
+
+        /**
+         @return <code>true</code> if the timeout expired and its task was run
+         */
+        boolean isExpired ();
+
+        /**
+         @return <code>true</code> if the timeout was cancelled before it expired
+         */
+        boolean isCancelled ();
+    }
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    // scanning the wheel for the earliest deadline is only worth it while few timeouts are pending
+    private static final int SKIP_AHEAD_LIMIT = 256;
+
+    private static final AtomicIntegerFieldUpdater<Entry> STATE =
+      AtomicIntegerFieldUpdater.newUpdater (Entry.class, "state");
+
+    private final long     tickNanos;
+    private final Bucket[] wheel;
+    private final int      mask;
+    private final long     startTime = System.nanoTime ();
+
+    private final Queue<Entry>  pending   = new ConcurrentLinkedQueue<> ();
+    private final Queue<Entry>  cancelled = new ConcurrentLinkedQueue<> ();
+    private final AtomicInteger active    = new AtomicInteger ();
+    private final AtomicBoolean started   = new AtomicBoolean ();
+    private final Thread        worker;
+
+    // time (relative to startTime) the timer thread is sleeping until. 0 while it's awake.
+    private volatile long sleepingUntil;
+
+    /**
+     @param tickDuration
+     timer resolution
+     @param unit
+     unit of <code>tickDuration</code>
+     @param wheelSize
+     number of buckets; rounded up to a power of 2. Timeouts further than <code>wheelSize</code> ticks away go around
+     the wheel more than once.
+     @param threadFactory
+     creates the timer thread
+     */
+    TimingWheel (final long tickDuration, final TimeUnit unit, final int wheelSize, final ThreadFactory threadFactory) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException ("Invalid tick duration: " + tickDuration);
+
+        if (wheelSize <= 0 || wheelSize > (1 << 30))
+            throw new IllegalArgumentException ("Invalid wheel size: " + wheelSize);
+
+        tickNanos = unit.toNanos (tickDuration);
+
+        final int size = Integer.highestOneBit (wheelSize) == wheelSize
+                         ? wheelSize
+                         : Integer.highestOneBit (wheelSize) << 1;
+
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket ();
+
+        mask = size - 1;
+        worker = threadFactory.newThread (new Runnable () {
+            @Override public void run () {
+                tickTock ();
+            }
+        });
+    }
+
+    /**
+     Run a task once the delay has passed
+
+     @param task
+     task to run on the timer thread
+     @param delay
+     delay before the task runs. A delay too long to count in nanoseconds (i.e. <code>Long.MAX_VALUE</code>) never
+     expires.
+     @param unit
+     unit of <code>delay</code>
+
+     @return a {@link Timeout} that can be used to cancel the task
+     */
+    public Timeout schedule (final Runnable task, final long delay, final TimeUnit unit) {
+        if (null == task)
+            throw new NullPointerException ("task");
+
+        if (started.compareAndSet (false, true))
+            worker.start ();
+
+        final long delayNanos = Math.max (0, unit.toNanos (delay));
+        final long now = elapsed ();
+
+        // toNanos () saturates, the sum would wrap around and fire right away. Clamped, it never fires.
+        final Entry entry = new Entry (task, delayNanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + delayNanos);
+        active.incrementAndGet ();
+        pending.add (entry);
+
+        // the timer thread checks the pending queue after announcing its wake up time, so one of us will notice
+        if (entry.deadline < sleepingUntil)
+            LockSupport.unpark (worker);
+
+        return entry;
+    }
+
+    /**
+     @return the number of scheduled timeouts that have neither expired nor been cancelled yet
+     */
+    public int pendingTimeouts () {
+        return active.get ();
+    }
+
+    // ---------- timer thread ----------
+
+    private void tickTock () {
+        long tick = 0;
+
+        while (true) {
+            removeCancelled ();
+            transferPending (tick);
+
+            final long tickEnd = (tick + 1) * tickNanos;
+
+            if (elapsed () >= tickEnd) {
+                expire (wheel[(int) (tick & mask)], tickEnd);
+                tick++;
+                continue;
+            }
+
+            final long wakeAt = nextWakeUp (tickEnd);
+            sleepingUntil = wakeAt;
+
+            if (pending.isEmpty ()) {
+                if (Long.MAX_VALUE == wakeAt)
+                    LockSupport.park (this);
+                else
+                    LockSupport.parkNanos (this, wakeAt - elapsed ());
+            }
+
+            sleepingUntil = 0;
+
+            // nothing is due before wakeAt, so the ticks we slept through can be skipped. Don't skip past the tick
+            // that ends at wakeAt: that's the one that has to be processed next.
+            tick = Math.max (tick, Math.min (elapsed () / tickNanos, wakeAt / tickNanos - 1));
+        }
+    }
+
+    /**
+     When does the timer thread need to be up next?
+
+     @param tickEnd
+     end of the current tick
+
+     @return end of the tick that holds the earliest deadline or {@link Long#MAX_VALUE} if nothing is pending
+     */
+    private long nextWakeUp (final long tickEnd) {
+        final int count = active.get ();
+
+        if (0 == count)
+            return Long.MAX_VALUE;
+
+        if (count > SKIP_AHEAD_LIMIT)
+            return tickEnd;
+
+        long earliest = Long.MAX_VALUE;
+
+        for (final Bucket bucket : wheel)
+            for (Entry entry = bucket.head; null != entry; entry = entry.next)
+                earliest = Math.min (earliest, entry.deadline);
+
+        // only cancelled timeouts, or ones too far out to ever fire, are left. The cancelled ones are cleaned up next
+        // time we're awake.
+        if (earliest > Long.MAX_VALUE - tickNanos)
+            return Long.MAX_VALUE;
+
+        return Math.max (tickEnd, ((earliest - 1) / tickNanos + 1) * tickNanos);
+    }
+
+    private void removeCancelled () {
+        Entry entry;
+
+        while (null != (entry = cancelled.poll ())) {
+            if (null != entry.bucket)
+                entry.bucket.remove (entry);
+
+            active.decrementAndGet ();
+        }
+    }
+
+    private void transferPending (final long currentTick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final Entry entry = pending.poll ();
+
+            if (null == entry)
+                return;
+
+            // counted off by removeCancelled ()
+            if (Entry.PENDING != entry.state)
+                continue;
+
+            // a timeout expires at the end of the tick its deadline falls in. Timeouts more than one revolution away
+            // share the bucket with closer ones and are skipped until their deadline comes up.
+            final long expiryTick = Math.max (currentTick, (entry.deadline - 1) / tickNanos);
+            wheel[(int) (expiryTick & mask)].add (entry);
+        }
+    }
+
+    private void expire (final Bucket bucket, final long tickEnd) {
+        Entry entry = bucket.head;
+
+        while (null != entry) {
+            final Entry next = entry.next;
+
+            if (entry.deadline <= tickEnd && entry.expire ()) {
+                bucket.remove (entry);
+                active.decrementAndGet ();
+                entry.run ();
+            }
+
+            entry = next;
+        }
+    }
+
+    private final class Entry
+      implements Timeout {
+        static final int PENDING   = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED   = 2;
+
+        private final long deadline;
+        private Runnable task;
+
+        volatile int state = PENDING;
+
+        // owned by the timer thread
+        Bucket bucket;
+        Entry  prev;
+        Entry  next;
+
+        Entry (final Runnable runnable, final long deadlineNanos) {
+            task = runnable;
+            deadline = deadlineNanos;
+        }
+
+        @Override public boolean cancel () {
+            if (!STATE.compareAndSet (this, PENDING, CANCELLED))
+                return false;
+
+            // unlinked lazily by the timer thread
+            task = null;
+            cancelled.add (this);
+            return true;
+        }
+
+        @Override public boolean isExpired () {
+            return EXPIRED == state;
+        }
+
+        @Override public boolean isCancelled () {
+            return CANCELLED == state;
+        }
+
+        boolean expire () {
+            return STATE.compareAndSet (this, PENDING, EXPIRED);
+        }
+
+        void run () {
+            final Runnable runnable = task;
+            task = null;
+
+            try {
+                runnable.run ();
+            } catch (Throwable ignore) {
+                // keep the timer alive
+            }
+        }
+    }
+
+    private long elapsed () {
+        return System.nanoTime () - startTime;
+    }
+
+    /**
+     Doubly linked list of the timeouts hashed to one tick. Only touched by the timer thread.
+     */
+    private static final class Bucket {
+        Entry head;
+        Entry tail;
+
+        void add (final Entry entry) {
+            entry.bucket = this;
+            entry.prev = tail;
+
+            if (null == tail)
+                head = entry;
+            else
+                tail.next = entry;
+
+            tail = entry;
+        }
+
+        void remove (final Entry entry) {
+            if (entry.bucket != this)
+                return;
+
+            if (null == entry.prev)
+                head = entry.next;
+            else
+                entry.prev.next = entry.next;
+
+            if (null == entry.next)
+                tail = entry.prev;
+            else
+                entry.next.prev = entry.prev;
+
+            entry.bucket = null;
+            entry.prev = null;
+            entry.next = null;
+        }
+    }
+}
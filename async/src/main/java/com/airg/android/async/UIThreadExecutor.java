@@ -18,22 +18,83 @@
 
 package com.airg.android.async;
 
+import android.annotation.TargetApi;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.support.annotation.NonNull;
+import android.view.Choreographer;
 
+import com.airg.android.device.ApiLevel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Executes tasks on the UI (main) thread
+ * Executes tasks on the UI (main) thread. Tasks submitted from the main thread run immediately.
+ * <p>
+ * By default every task is its own {@link Handler#post(Runnable) post}. In batching mode, tasks are queued instead and
+ * a single post runs them all, so a burst of callbacks costs one main thread wake up rather than one each. A batch
+ * stops once it has used up its frame budget and the rest runs after the next frame, so a burst can't cause jank.
+ * <p>
+ * Posts can optionally be sent as asynchronous messages (API 22+). Ordinary messages wait behind the sync barrier the
+ * view system puts up while a layout traversal is pending; asynchronous ones don't, which cuts delivery latency while
+ * the UI is busy. The trade off: they may run before messages that were posted earlier through other handlers, and
+ * they run ahead of the pending frame, so they must stay short.
  * @author Mahram Z. Foadi
  */
 final class UIThreadExecutor
   implements Executor {
+    /**
+     * Half a frame at 60fps: leaves the other half for input, animation and drawing
+     */
+    static final long DEFAULT_FRAME_BUDGET_MS = 8;
+
     private final Handler handler;
+    private final boolean batching;
+    private final long    budgetNanos;
+    private final boolean asynchronous;
+
+    private final Queue<Runnable> batch     = new ConcurrentLinkedQueue<> ();
+    private final AtomicBoolean   scheduled = new AtomicBoolean ();
+
+    private final Runnable drain = new Runnable () {
+        @Override public void run () {
+            drain ();
+        }
+    };
+
+    // runs the rest of the batch right after the next frame has been drawn
+    private final Choreographer.FrameCallback nextFrame = new Choreographer.FrameCallback () {
+        @Override public void doFrame (final long frameTimeNanos) {
+            post (drain);
+        }
+    };
 
     UIThreadExecutor () {
+        this (false, DEFAULT_FRAME_BUDGET_MS, false);
+    }
+
+    /**
+     * @param batch
+     * queue tasks and run them from a single post
+     * @param frameBudgetMillis
+     * how long a batch may run before it yields to the next frame
+     * @param async
+     * send asynchronous messages. Ignored before API 22.
+     */
+    UIThreadExecutor (final boolean batch, final long frameBudgetMillis, final boolean async) {
+        if (frameBudgetMillis <= 0)
+            throw new IllegalArgumentException ("Invalid frame budget: " + frameBudgetMillis);
+
         handler = new Handler (Looper.getMainLooper ());
+        batching = batch;
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos (frameBudgetMillis);
+        asynchronous = async && ApiLevel.atLeast (Build.VERSION_CODES.LOLLIPOP_MR1);
     }
 
     @Override
@@ -41,8 +102,59 @@ final class UIThreadExecutor
 
         if (handler.getLooper () == Looper.myLooper ()) {
             runnable.run ();
+        } else if (!batching) {
+            post (runnable);
         } else {
+            batch.add (runnable);
+
+            if (scheduled.compareAndSet (false, true))
+                post (drain);
+        }
+    }
+
+    private void post (final Runnable runnable) {
+        if (asynchronous)
+            postAsync (runnable);
+        else
             handler.post (runnable);
+    }
+
+    @TargetApi (Build.VERSION_CODES.LOLLIPOP_MR1)
+    private void postAsync (final Runnable runnable) {
+        final Message message = Message.obtain (handler, runnable);
+        message.setAsynchronous (true);
+        handler.sendMessage (message);
+    }
+
+    private void drain () {
+        final long deadline = System.nanoTime () + budgetNanos;
+
+        while (true) {
+            final Runnable runnable = batch.poll ();
+
+            if (null == runnable) {
+                scheduled.set (false);
+
+                // a task queued after the poll above may have seen scheduled still set and not posted
+                if (batch.isEmpty () || !scheduled.compareAndSet (false, true))
+                    return;
+
+                continue;
+            }
+
+            try {
+                runnable.run ();
+            } catch (Throwable t) {
+                // still scheduled: don't strand the rest of the batch
+                post (drain);
+                throw t;
+            }
+
+            if (System.nanoTime () >= deadline && !batch.isEmpty ()) {
+                // still scheduled: the remaining tasks wait for the frame callback
+                Choreographer.getInstance ().postFrameCallback (nextFrame);
+                return;
+            }
         }
     }
 }
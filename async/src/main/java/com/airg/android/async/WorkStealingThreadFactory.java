@@ -0,0 +1,81 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ Thread factory for the work-stealing background pool. Workers are named and prioritized (both Java and Linux
+ priority) by a {@link CPUWorkerThreadFactory}, exactly like the threads of the regular pool.
+ */
+@TargetApi (Build.VERSION_CODES.LOLLIPOP)
+final class WorkStealingThreadFactory
+  implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    private final CPUWorkerThreadFactory threadConfig;
+
+    WorkStealingThreadFactory (final String name, final int priority, final int processPriority) {
+        threadConfig = new CPUWorkerThreadFactory (name, priority, processPriority);
+    }
+
+    @Override public ForkJoinWorkerThread newThread (final ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = new Worker (pool, threadConfig);
+        threadConfig.configure (thread);
+        return thread;
+    }
+
+    /**
+     Create a work-stealing pool. Tasks submitted from a worker thread are pushed onto that worker's own deque and idle
+     workers steal from the others, so tasks that fan out into subtasks don't all contend on a single queue. Async
+     (FIFO) mode is used since submitted tasks are never joined.
+
+     @param parallelism
+     number of workers
+     @param name
+     worker thread name prefix
+     @param priority
+     worker thread priority
+     @param processPriority
+     worker Linux thread priority
+     */
+    static ExecutorService newPool (final int parallelism, final String name, final int priority,
+                                    final int processPriority) {
+        return new ForkJoinPool (parallelism, new WorkStealingThreadFactory (name, priority, processPriority), null,
+                                 true);
+    }
+
+    private static final class Worker
+      extends ForkJoinWorkerThread {
+        private final CPUWorkerThreadFactory threadConfig;
+
+        Worker (final ForkJoinPool pool, final CPUWorkerThreadFactory config) {
+            super (pool);
+            threadConfig = config;
+        }
+
+        @Override protected void onStart () {
+            super.onStart ();
+            threadConfig.onWorkerStart ();
+        }
+    }
+}
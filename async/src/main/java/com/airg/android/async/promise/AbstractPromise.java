@@ -4,7 +4,10 @@ import com.airg.android.async.ThreadPool;
 //import com.airg.android.logging.Logger;
 //import com.airg.android.logging.TaggedLogger;
 
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Another implementation for {@link Promise}. Override the bits that do work and this will do the rest.
@@ -43,39 +46,46 @@ public abstract class AbstractPromise<RESULT>
      */
     @Override
     public final void run() {
-        try {
-            final RESULT result = result();
+        // cancelled (or timed out) before it got to run
+        if (promise.isDone())
+            return;
 
-            synchronized (promise) {
-                if (promise.isCancelled())
-                    return;
+        final RESULT result;
 
-                promise.success(result);
-            }
+        try {
+            result = result();
         } catch (Exception e) {
             //LOG.e(e);
-            synchronized (promise) {
-                promise.failed(e);
-            }
+            promise.tryFail(e);
+            return;
         }
+
+        // no effect if the promise was cancelled or timed out in the meantime. Outside the try block: a listener that
+        // throws is not a failure of the task, and the promise is done by then anyway.
+        promise.trySuccess(result);
     }
 
     /**
-     * Final method. Marks the task as cancelled. To actually
+     * Final method. Marks the task as cancelled. If it is still waiting in a {@link ThreadPool} queue, it does nothing
+     * once it comes up. To actually stop a running task, override {@link #abort()}.
      */
+    @Override
     public final void cancel() {
-        synchronized (promise) {
-            if (promise.isCancelled()) // already cancelled once
-                return;
-
-            try {
-                abort();
-            } catch (Exception e) {
-                //LOG.e(e, "abort() failed.");
-            } finally {
-                promise.cancelled();
+        // only the first cancel() gets through. abort() runs before the listeners are notified.
+        promise.tryCancel(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    abort();
+                } catch (Exception e) {
+                    //LOG.e(e, "abort() failed.");
+                }
             }
-        }
+        });
+    }
+
+    SimplePromise<RESULT> core() {
+        return promise;
     }
 
     /**
@@ -120,14 +130,91 @@ public abstract class AbstractPromise<RESULT>
         return this;
     }
 
+    /**
+     * See {@link Promise#map(Transform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> map(final Transform<? super RESULT, ? extends NEXT> transform) {
+        return PromiseChain.map(this, transform);
+    }
+
+    /**
+     * See {@link Promise#then(AsyncTransform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> then(final AsyncTransform<? super RESULT, NEXT> transform) {
+        return PromiseChain.then(this, transform);
+    }
+
+    /**
+     * See {@link Promise#recover(Recovery)}
+     */
+    @Override
+    public Promise<RESULT> recover(final Recovery<? extends RESULT> recovery) {
+        return PromiseChain.recover(this, recovery);
+    }
+
+    /**
+     * See {@link Promise#onExecutor(Executor)}
+     */
+    @Override
+    public Promise<RESULT> onExecutor(final Executor executor) {
+        return PromiseChain.onExecutor(this, executor);
+    }
+
+    /**
+     * See {@link Promise#timeout(long, TimeUnit)}. On timeout, the promise fails and {@link #abort()} is called.
+     */
+    @Override
+    public AbstractPromise<RESULT> timeout(final long timeout, final TimeUnit unit) {
+        promise.bindDeadline(PromiseTimeout.schedule(this, timeout, unit, new Runnable() {
+            @Override
+            public void run() {
+                if (!promise.tryFail(PromiseTimeout.exception(timeout, unit)))
+                    return;
+
+                try {
+                    abort();
+                } catch (Exception e) {
+                    //LOG.e(e, "abort() failed.");
+                }
+            }
+        }));
+
+        return this;
+    }
+
+    /**
+     * See {@link Promise#await()}
+     */
+    @Override
+    public RESULT await() throws InterruptedException, ExecutionException {
+        return promise.await();
+    }
+
+    /**
+     * See {@link Promise#await(long, TimeUnit)}
+     */
+    @Override
+    public RESULT await(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return promise.await(timeout, unit);
+    }
+
+    /**
+     * See {@link Promise#getNow(Object)}
+     */
+    @Override
+    public RESULT getNow(final RESULT valueIfAbsent) {
+        return promise.getNow(valueIfAbsent);
+    }
+
     /**
      * See {@link Promise#isDone()}
      */
     @Override
     public boolean isDone() {
-        synchronized (promise) {
-            return promise.isDone();
-        }
+        return promise.isDone();
     }
 
     /**
@@ -135,9 +222,7 @@ public abstract class AbstractPromise<RESULT>
      */
     @Override
     public boolean succeeded() {
-        synchronized (promise) {
-            return promise.succeeded();
-        }
+        return promise.succeeded();
     }
 
     /**
@@ -145,9 +230,7 @@ public abstract class AbstractPromise<RESULT>
      */
     @Override
     public boolean isFailed() {
-        synchronized (promise) {
-            return promise.isFailed();
-        }
+        return promise.isFailed();
     }
 
     /**
@@ -155,8 +238,6 @@ public abstract class AbstractPromise<RESULT>
      */
     @Override
     public boolean isCancelled() {
-        synchronized (promise) {
-            return promise.isCancelled();
-        }
+        return promise.isCancelled();
     }
 }
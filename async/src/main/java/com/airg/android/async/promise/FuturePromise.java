@@ -18,6 +18,9 @@
 
 package com.airg.android.async.promise;
 
+import com.airg.android.async.AsyncHelper;
+import com.airg.android.async.Prioritized;
+import com.airg.android.async.TimingWheel;
 //import com.airg.android.logging.Logger;
 //import com.airg.android.logging.TaggedLogger;
 
@@ -25,24 +28,44 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
-
-import lombok.Synchronized;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  A {@link FutureTask} that implements the {@link Promise} interface to provide completion, failure, and cancellation
  callbacks. By default, the callbacks run on the same thread that executes this task. To force a specific thread,
  provide
  an {@link Executor} to {@link FuturePromise#FuturePromise(Callable, Executor)} or {@link
-FuturePromise#FuturePromise(Runnable, Object, Executor)}
+FuturePromise#FuturePromise(Runnable, Object, Executor)}. A {@link Prioritized#getPriority() priority} can be provided
+ as well, which is honored when the task is queued on {@link com.airg.android.async.ThreadPool#background()}.
+ Cancelling a task that was {@link com.airg.android.async.ThreadPool#schedule(long, java.util.concurrent.TimeUnit,
+Callable) scheduled} also removes it from the timer. A cancelled task that is still waiting in one of the
+ {@link com.airg.android.async.ThreadPool} queues does nothing once it comes up.
 
  @author Mahram Z. Foadi */
 @SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
 public final class FuturePromise<RESULT>
   extends FutureTask<RESULT>
-  implements Promise<RESULT> {
+  implements Promise<RESULT>, Prioritized {
     //private static final TaggedLogger LOG = Logger.tag ("ASYNC:FP");
 
     private final SimplePromise<RESULT> delegate;
+    private final int                   priority;
+
+    private volatile TimingWheel.Timeout scheduled;
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FuturePromise, Object> RUNNER =
+      AtomicReferenceFieldUpdater.newUpdater (FuturePromise.class, Object.class, "runner");
+
+    // runner states while a timeout interrupts the thread
+    private static final Object INTERRUPTING = new Object ();
+    private static final Object INTERRUPTED  = new Object ();
+
+    // thread running the task, so a timeout can interrupt it. A timeout claims it by swapping in INTERRUPTING, then
+    // INTERRUPTED once it's done, so the thread is never interrupted after it has moved on to another task.
+    private volatile Object runner;
 
     /**
      Wrap a {@link Callable}
@@ -63,8 +86,35 @@ public final class FuturePromise<RESULT>
      an {@link Executor} on which the callbacks will execute
      */
     public FuturePromise (Callable<RESULT> callable, final Executor executor) {
+        this (PRIORITY_NORMAL, callable, executor);
+    }
+
+    /**
+     Wrap a {@link Callable} with a priority
+
+     @param priority
+     task priority. See {@link Prioritized}
+     @param callable
+     callable to get the result from
+     */
+    public FuturePromise (final int priority, Callable<RESULT> callable) {
+        this (priority, callable, null);
+    }
+
+    /**
+     Wrap a {@link Callable} with a priority and provide an {@link Executor} for the callbacks.
+
+     @param priority
+     task priority. See {@link Prioritized}
+     @param callable
+     callable to get the result from
+     @param executor
+     an {@link Executor} on which the callbacks will execute
+     */
+    public FuturePromise (final int priority, Callable<RESULT> callable, final Executor executor) {
         super (callable);
         delegate = new SimplePromise<> (executor);
+        this.priority = priority;
     }
 
     /**
@@ -90,8 +140,33 @@ public final class FuturePromise<RESULT>
      an {@link Executor} on which the callbacks will execute
      */
     public FuturePromise (Runnable runnable, RESULT resultHolder, final Executor executor) {
+        this (PRIORITY_NORMAL, runnable, resultHolder, executor);
+    }
+
+    /**
+     Wrap a {@link Runnable} with a priority and provide an {@link Executor} for the callbacks.
+
+     @param priority
+     task priority. See {@link Prioritized}
+     @param runnable
+     Runnable to get the result from
+     @param resultHolder
+     The result placeholder
+     @param executor
+     an {@link Executor} on which the callbacks will execute
+     */
+    public FuturePromise (final int priority, Runnable runnable, RESULT resultHolder, final Executor executor) {
         super (runnable, resultHolder);
         delegate = new SimplePromise<> (executor);
+        this.priority = priority;
+    }
+
+    /**
+     See {@link Prioritized#getPriority()}
+     */
+    @Override
+    public int getPriority () {
+        return priority;
     }
 
     /**
@@ -104,12 +179,45 @@ public final class FuturePromise<RESULT>
         return isDone () && !(isFailed () || isCancelled ());
     }
 
+    /**
+     Fail this task without running it (or without waiting for it to finish). Has no effect if the task is already
+     done. Failure listeners are notified with the provided cause.
+
+     @param cause
+     reason of the failure
+     */
+    void fail (final Throwable cause) {
+        setException (cause);
+    }
+
+    /**
+     Cancel a pending timer entry once this task is done. Used for delayed tasks: if the task is cancelled before its
+     start time, the timer doesn't hang on to it until then.
+
+     @param timeout
+     timer entry that will start this task
+     */
+    void bindTimeout (final TimingWheel.Timeout timeout) {
+        scheduled = timeout;
+
+        // done () may have missed it
+        if (isDone ())
+            timeout.cancel ();
+    }
+
     // ---------- Promise bits ----------
 
+    /**
+     Cancel the task, interrupting it if it's already running. See {@link FutureTask#cancel(boolean)}.
+     */
+    @Override
+    public void cancel () {
+        cancel (true);
+    }
+
     /**
      See {@link Promise#onComplete(OnCompleteListener)}
      */
-    @Synchronized
     @Override
     public final FuturePromise<RESULT> onComplete (final OnCompleteListener<RESULT> listener) {
         delegate.onComplete (listener);
@@ -119,7 +227,6 @@ public final class FuturePromise<RESULT>
     /**
      See {@link Promise#onFail(OnFailListener)}
      */
-    @Synchronized
     @Override
     public final FuturePromise<RESULT> onFail (final OnFailListener listener) {
         delegate.onFail (listener);
@@ -129,7 +236,6 @@ public final class FuturePromise<RESULT>
     /**
      See {@link Promise#onCancel(OnCancelListener)}
      */
-    @Synchronized
     @Override
     public final FuturePromise<RESULT> onCancel (final OnCancelListener listener) {
         delegate.onCancel (listener);
@@ -139,31 +245,159 @@ public final class FuturePromise<RESULT>
     /**
      See {@link Promise#isFailed()}
      */
-    @Synchronized
     @Override
     public boolean isFailed () {
         return delegate.isFailed ();
     }
 
+    /**
+     See {@link Promise#map(Transform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> map (final Transform<? super RESULT, ? extends NEXT> transform) {
+        return PromiseChain.map (this, transform);
+    }
+
+    /**
+     See {@link Promise#then(AsyncTransform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> then (final AsyncTransform<? super RESULT, NEXT> transform) {
+        return PromiseChain.then (this, transform);
+    }
+
+    /**
+     See {@link Promise#recover(Recovery)}
+     */
+    @Override
+    public Promise<RESULT> recover (final Recovery<? extends RESULT> recovery) {
+        return PromiseChain.recover (this, recovery);
+    }
+
+    /**
+     See {@link Promise#onExecutor(Executor)}
+     */
+    @Override
+    public Promise<RESULT> onExecutor (final Executor executor) {
+        return PromiseChain.onExecutor (this, executor);
+    }
+
+    /**
+     See {@link Promise#timeout(long, TimeUnit)}. On timeout, the task fails and the thread running it, if any, is
+     interrupted.
+     */
+    @Override
+    public FuturePromise<RESULT> timeout (final long timeout, final TimeUnit unit) {
+        delegate.bindDeadline (PromiseTimeout.schedule (this, timeout, unit, new Runnable () {
+            @Override
+            public void run () {
+                expire (PromiseTimeout.exception (timeout, unit));
+            }
+        }));
+
+        return this;
+    }
+
+    /**
+     Same as {@link #get()}, but may not be called on the main thread. See {@link Promise#await()}.
+     */
+    @Override
+    public RESULT await () throws InterruptedException, ExecutionException {
+        AsyncHelper.assertNotMainThread ();
+        return get ();
+    }
+
+    /**
+     Same as {@link #get(long, TimeUnit)}, but may not be called on the main thread. See
+     {@link Promise#await(long, TimeUnit)}.
+     */
+    @Override
+    public RESULT await (final long timeout, final TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+        AsyncHelper.assertNotMainThread ();
+        return get (timeout, unit);
+    }
+
+    /**
+     See {@link Promise#getNow(Object)}
+     */
+    @Override
+    public RESULT getNow (final RESULT valueIfAbsent) {
+        return delegate.getNow (valueIfAbsent);
+    }
+
+    SimplePromise<RESULT> core () {
+        return delegate;
+    }
+
+    private void expire (final TimeoutException e) {
+        setException (e);
+
+        // someone else got there first
+        if (delegate.failure () != e)
+            return;
+
+        final Object thread = runner;
+
+        if (!(thread instanceof Thread) || !RUNNER.compareAndSet (this, thread, INTERRUPTING))
+            return;
+
+        ((Thread) thread).interrupt ();
+        runner = INTERRUPTED;
+    }
+
     // ---------- FutureTask bits ----------
 
-    @Synchronized
+    @Override
+    public void run () {
+        final Thread current = Thread.currentThread ();
+        runner = current;
+
+        try {
+            super.run ();
+        } finally {
+            // a timeout claimed the thread: wait for its interrupt, so it doesn't leak into whatever the pool thread
+            // runs next
+            if (!RUNNER.compareAndSet (this, current, null)) {
+                while (INTERRUPTED != runner)
+                    Thread.yield ();
+
+                Thread.interrupted ();
+                runner = null;
+            }
+        }
+    }
+
     @Override
     protected void done () {
         super.done ();
 
+        final TimingWheel.Timeout pendingTimeout = scheduled;
+        if (null != pendingTimeout)
+            pendingTimeout.cancel ();
+
         if (isCancelled ()) {
             //LOG.d ("FuturePromise completed due to cancellation");
+            // not removed from the queue: that's a scan per cancel. FutureTask.run () skips it once it comes up, and a
+            // full background queue purges it before its backpressure policy applies.
             delegate.cancelled ();
-        } else
-            try {
-                delegate.success (get ());
-                //LOG.d ("FuturePromise completed");
-            } catch (ExecutionException ee) {
-                //LOG.e ("FuturePromise failed.");
-                delegate.failed (ee.getCause ());
-            } catch (Exception e) {
-                throw new RuntimeException ("Unable to get result", e);
-            }
+            return;
+        }
+
+        final RESULT result;
+
+        try {
+            result = get ();
+        } catch (ExecutionException ee) {
+            //LOG.e ("FuturePromise failed.");
+            delegate.failed (ee.getCause ());
+            return;
+        } catch (Exception e) {
+            throw new RuntimeException ("Unable to get result", e);
+        }
+
+        // outside the try block, so an exception thrown by a listener is passed on as is
+        delegate.success (result);
+        //LOG.d ("FuturePromise completed");
     }
 }
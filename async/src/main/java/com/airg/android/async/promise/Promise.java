@@ -18,9 +18,34 @@
 
 package com.airg.android.async.promise;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * The <code>Promise</code> interface is very similar to a {@link java.util.concurrent.Future}, but it provides
  * callbacks for completion, failure, and cancellation
+ * <p>
+ * Any number of callbacks can be added. They are notified in the order they were added, and callbacks added after the
+ * promise is done are notified right away. Callbacks are only called once the outcome is published and no lock is held,
+ * so a slow callback never blocks other threads checking on the promise.
+ * <p>
+ * Multi-step flows can be chained with {@link #map(Transform)}, {@link #then(AsyncTransform)} and
+ * {@link #recover(Recovery)}. Each step returns a new promise and runs on the thread that completed the previous one,
+ * unless {@link #onExecutor(Executor)} moves the rest of the chain elsewhere:
+ * <pre>
+ * {@code
+ * fetch (url)                                   // Promise<byte[]>
+ *     .map (parseJson)                          // Promise<JSONObject>, parsed on the fetching thread
+ *     .then (downloadThumbnail)                 // Promise<Bitmap>, another asynchronous step
+ *     .recover (usePlaceholder)                 // Promise<Bitmap>, never fails
+ *     .onExecutor (ThreadPool.foreground ())
+ *     .onComplete (showThumbnail);              // on the UI thread
+ * }
+ * </pre>
+ * Failures skip the remaining steps until a <code>recover</code>, and a cancelled promise cancels the promises derived
+ * from it.
  *
  * @author Mahram Z. Foadi
  * @author Jaap Sutter
@@ -81,6 +106,139 @@ public interface Promise<RESULT> {
      */
     boolean isCancelled();
 
+    /**
+     * Request cancellation. Stops the task if the implementation is able to, and notifies
+     * {@link OnCancelListener}s. Has no effect if the promise is already done.
+     * <p>
+     * Promises derived from this one (see {@link #map(Transform)} and {@link Promises}) are cancelled as well. In the
+     * other direction, a source promise is cancelled once all the promises derived from it are, as long as no listener
+     * was added to it directly. Tasks still waiting in a {@link com.airg.android.async.ThreadPool} queue don't run
+     * once they come up.
+     */
+    void cancel();
+
+    /**
+     * Fail the promise with a {@link TimeoutException} if it isn't done in time, and stop the task if the
+     * implementation is able to. Calling this again adds another deadline; the earliest one wins.
+     *
+     * @param timeout time the promise has to complete
+     * @param unit    unit of <code>timeout</code>
+     * @return this instance to chain more calls
+     */
+    Promise<RESULT> timeout(final long timeout, final TimeUnit unit);
+
+    /**
+     * Block until the promise is done. Must not be called on the main thread.
+     *
+     * @return the result
+     * @throws InterruptedException                       if the calling thread was interrupted while waiting
+     * @throws ExecutionException                         if the promise failed. The failure is the cause.
+     * @throws java.util.concurrent.CancellationException if the promise was cancelled
+     * @throws IllegalStateException                      if called on the main thread
+     */
+    RESULT await() throws InterruptedException, ExecutionException;
+
+    /**
+     * Block until the promise is done or the timeout passes. Must not be called on the main thread.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of <code>timeout</code>
+     * @return the result
+     * @throws InterruptedException                       if the calling thread was interrupted while waiting
+     * @throws ExecutionException                         if the promise failed. The failure is the cause.
+     * @throws TimeoutException                           if the promise wasn't done in time
+     * @throws java.util.concurrent.CancellationException if the promise was cancelled
+     * @throws IllegalStateException                      if called on the main thread
+     */
+    RESULT await(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException;
+
+    /**
+     * Get the result without waiting. Safe to call on any thread.
+     *
+     * @param valueIfAbsent value to return if the promise hasn't succeeded (yet)
+     * @return the result if the promise succeeded, <code>valueIfAbsent</code> otherwise
+     */
+    RESULT getNow(final RESULT valueIfAbsent);
+
+    /**
+     * Transform the result of this promise once it succeeds. The transform runs on the thread that completes this
+     * promise.
+     *
+     * @param transform converts the result. If it throws, the returned promise fails.
+     * @param <NEXT>    type of the transformed result
+     * @return a promise of the transformed result. Fails or is cancelled if this promise does.
+     */
+    <NEXT> Promise<NEXT> map(final Transform<? super RESULT, ? extends NEXT> transform);
+
+    /**
+     * Start another asynchronous step once this promise succeeds (also known as <code>flatMap</code>). The transform
+     * runs on the thread that completes this promise.
+     *
+     * @param transform starts the next step. If it throws, the returned promise fails.
+     * @param <NEXT>    type of the next step's result
+     * @return a promise that completes the same way the promise returned by <code>transform</code> does. Fails or is
+     * cancelled if this promise does.
+     */
+    <NEXT> Promise<NEXT> then(final AsyncTransform<? super RESULT, NEXT> transform);
+
+    /**
+     * Replace a failure of this promise with a result. The recovery runs on the thread that fails this promise.
+     *
+     * @param recovery provides a result for the failure. If it throws, the returned promise fails.
+     * @return a promise that succeeds with this promise's result or the recovered one. Cancelled if this promise is.
+     */
+    Promise<RESULT> recover(final Recovery<? extends RESULT> recovery);
+
+    /**
+     * Notify listeners, and run any steps chained after this one, on the given executor
+     *
+     * @param executor executor to run callbacks on, i.e. {@link com.airg.android.async.ThreadPool#foreground()}
+     * @return a promise that completes the same way this one does
+     */
+    Promise<RESULT> onExecutor(final Executor executor);
+
+    /**
+     * Synchronous chain step. See {@link #map(Transform)}.
+     *
+     * @param <IN>  result type of the previous step
+     * @param <OUT> result type of this step
+     */
+    interface Transform<IN, OUT> {
+        /**
+         * @param input result of the previous step
+         * @return result of this step
+         */
+        OUT apply(IN input) throws Exception;
+    }
+
+    /**
+     * Asynchronous chain step. See {@link #then(AsyncTransform)}.
+     *
+     * @param <IN>  result type of the previous step
+     * @param <OUT> result type of this step
+     */
+    interface AsyncTransform<IN, OUT> {
+        /**
+         * @param input result of the previous step
+         * @return a promise of the result of this step
+         */
+        Promise<OUT> apply(IN input) throws Exception;
+    }
+
+    /**
+     * Failure handler. See {@link #recover(Recovery)}.
+     *
+     * @param <RESULT> result type of the promise
+     */
+    interface Recovery<RESULT> {
+        /**
+         * @param error failure cause
+         * @return a result to use instead
+         */
+        RESULT recover(Throwable error) throws Exception;
+    }
+
     /**
      * Task completion callback
      *
@@ -0,0 +1,626 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.airg.android.async.ThreadPool;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ A loading cache of {@link Promise}s. A hit returns an already completed promise, a miss loads the value on the
+ {@link ThreadPool} (or the executor given to the {@link Builder}) and callers asking for a key that is still loading
+ share that load. Only successful loads are cached.
+ <p>
+ The cache is bounded by weight: by default every entry weighs 1, so the bound is the number of entries. Once it's
+ exceeded, entries are evicted in least recently used order. With {@link Eviction#TINY_LFU}, a newly loaded value also
+ has to be used more often than the entry it would replace, according to a compact frequency sketch, or it isn't
+ cached at all. That keeps one-off lookups (e.g. scrolling through a long list once) from flushing out the entries
+ that are used all the time.
+ <p>
+ Register the cache with {@link android.content.Context#registerComponentCallbacks(android.content.ComponentCallbacks)}
+ to have it shrink under memory pressure, or call {@link #onTrimMemory(int)} yourself.
+ <pre>
+ {@code
+ PromiseCache<String, Bitmap> thumbnails = PromiseCache.<String, Bitmap>builder ()
+ .maximumWeight (8 * 1024 * 1024)
+ .weigher (bitmapBytes)
+ .expireAfterWrite (10, TimeUnit.MINUTES)
+ .build (loadThumbnail);
+
+ context.registerComponentCallbacks (thumbnails);
+ thumbnails.get (url).onComplete (showThumbnail);
+ }
+ </pre>
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class PromiseCache<K, V>
+  implements ComponentCallbacks2 {
+
+    /**
+     Loads the value of a key that isn't cached
+     */
+    public interface Loader<K, V> {
+        V load (K key) throws Exception;
+    }
+
+    /**
+     Computes the weight of a cached value, i.e. its size in bytes
+     */
+    public interface Weigher<K, V> {
+        int weigh (K key, V value);
+    }
+
+    /**
+     How to pick the entries to drop once the cache is full
+     */
+    public enum Eviction {
+        /**
+         Drop the least recently used entries
+         */
+        LRU,
+
+        /**
+         Drop the least recently used entries, but only cache new values that are used more often than the entry they
+         would replace
+         */
+        TINY_LFU
+    }
+
+    private static final long NEVER                = 0;
+    private static final int  SKETCH_ENTRIES_GUESS = 1024;
+    private static final int  MAX_SKETCH_ENTRIES   = 1 << 16;
+
+    private final Loader<K, V>  loader;
+    private final Weigher<K, V> weigher;
+    private final long          maximumWeight;
+    private final long          expireNanos;
+    // null for the background pool, looked up on first use so ThreadPool.init () still has a say
+    private final Executor      executor;
+    private final Executor      callbackExecutor;
+
+    // null for LRU
+    private final FrequencySketch sketch;
+
+    // all entries, loading ones included, least recently used first. Guarded by this.
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<> (16, 0.75f, true);
+    private       long                       weight;
+
+    private PromiseCache (final Builder<K, V> builder, final Loader<K, V> loader) {
+        this.loader = loader;
+        weigher = builder.weigher;
+        maximumWeight = builder.maximumWeight;
+        expireNanos = builder.expireNanos;
+        executor = builder.executor;
+        callbackExecutor = builder.callbackExecutor;
+        // without a weigher, the maximum weight is the number of entries. Otherwise, guess.
+        sketch = Eviction.TINY_LFU == builder.eviction
+                 ? new FrequencySketch (null == weigher ? maximumWeight : SKETCH_ENTRIES_GUESS)
+                 : null;
+    }
+
+    /**
+     Get a new {@link Builder}
+
+     @return a {@link Builder}
+     */
+    public static <K, V> Builder<K, V> builder () {
+        return new Builder<> ();
+    }
+
+    /**
+     Get the value of a key, loading it if it isn't cached
+
+     @param key
+     key to look up
+
+     @return a completed promise if the value is cached. Otherwise, a promise of the value being loaded. Cancelling it
+     only cancels the load if no one else is waiting for it.
+     */
+    public Promise<V> get (@NonNull final K key) {
+        boolean counted = false;
+
+        while (true) {
+            final Entry<V> entry;
+            final FuturePromise<V> pending;
+            final boolean started;
+
+            synchronized (this) {
+                if (null != sketch && !counted)
+                    sketch.increment (key);
+
+                counted = true;
+
+                final Entry<V> cached = lookup (key);
+
+                if (null != cached && null != cached.value)
+                    return cached.value;
+
+                started = null == cached;
+
+                if (started) {
+                    pending = new FuturePromise<> (new Callable<V> () {
+                        @Override public V call () throws Exception {
+                            return loader.load (key);
+                        }
+                    });
+                    entry = new Entry<> (pending);
+                    entries.put (key, entry);
+                } else {
+                    entry = cached;
+                    // store () clears it once the load is done
+                    pending = cached.load;
+                }
+            }
+
+            // each caller gets its own promise, so one of them cancelling doesn't cancel the load for everyone
+            final SimplePromise<V> caller = new SimplePromise<> (callbackExecutor);
+
+            if (started)
+                // registered before any caller: the value is cached by the time they hear about it
+                pending.core ().observe (new Completion (key, entry));
+
+            // joined just as the last caller cancelled it: Completion may not have dropped the entry yet
+            if (!PromiseChain.forward (pending, caller) || (!started && pending.isCancelled ())) {
+                loadFailed (key, entry);
+                continue;
+            }
+
+            if (started)
+                try {
+                    executor ().execute (pending);
+                } catch (RejectedExecutionException e) {
+                    // fails everyone waiting on it and, through Completion, drops the entry so the next get () retries
+                    pending.fail (e);
+                }
+
+            return caller;
+        }
+    }
+
+    /**
+     @return the cached value or <code>null</code> if it isn't cached (or still loading)
+     */
+    @Nullable
+    public synchronized V getIfPresent (@NonNull final K key) {
+        final Entry<V> entry = lookup (key);
+        return null == entry || null == entry.value ? null : entry.value.getNow (null);
+    }
+
+    /**
+     Cache a value, replacing the cached or loading one. A load in progress still completes its callers' promises, but
+     its value isn't cached. The value skips the {@link Eviction#TINY_LFU} admission check: it's only evicted to make
+     room if it doesn't fit on its own.
+     */
+    public synchronized void put (@NonNull final K key, @NonNull final V value) {
+        remove (key, entries.get (key));
+
+        final Entry<V> entry = new Entry<> (null);
+        entries.put (key, entry);
+        store (key, entry, value, false);
+    }
+
+    /**
+     Drop a cached value. A load in progress still completes its callers' promises, but its value isn't cached.
+     */
+    public synchronized void invalidate (@NonNull final K key) {
+        remove (key, entries.get (key));
+    }
+
+    /**
+     Drop all cached values
+     */
+    public synchronized void invalidateAll () {
+        entries.clear ();
+        weight = 0;
+    }
+
+    /**
+     Evict entries until the cache weighs no more than <code>target</code>. Expired entries are dropped first.
+     */
+    public synchronized void trimToWeight (final long target) {
+        purgeExpired ();
+        evict (Math.max (0, target), null, null, false);
+    }
+
+    /**
+     @return the number of entries, including the ones still loading
+     */
+    public synchronized int size () {
+        return entries.size ();
+    }
+
+    /**
+     @return the total weight of the cached values
+     */
+    public synchronized long weight () {
+        return weight;
+    }
+
+    // ---------- ComponentCallbacks2 bits ----------
+
+    /**
+     Shrink the cache according to the memory pressure <code>level</code>: drop everything when the process is likely
+     to be killed or the system is critically low, half of the cache when it is in the background or memory is
+     getting low, and only expired entries otherwise.
+     */
+    @Override
+    public void onTrimMemory (final int level) {
+        if (level >= TRIM_MEMORY_MODERATE || TRIM_MEMORY_RUNNING_CRITICAL == level)
+            invalidateAll ();
+        else if (level >= TRIM_MEMORY_BACKGROUND || TRIM_MEMORY_RUNNING_LOW == level)
+            trimToWeight (weight () / 2);
+        else
+            trimToWeight (maximumWeight);
+    }
+
+    @Override
+    public void onLowMemory () {
+        invalidateAll ();
+    }
+
+    @Override
+    public void onConfigurationChanged (final Configuration newConfig) {
+    }
+
+    // ---------- Private helper bits ----------
+
+    private Executor executor () {
+        return null == executor ? ThreadPool.background () : executor;
+    }
+
+    /**
+     @return the entry for <code>key</code>, unless there is none or it has expired. Counts as a use. Guarded by this.
+     */
+    private Entry<V> lookup (final K key) {
+        final Entry<V> entry = entries.get (key);
+
+        if (null != entry && isExpired (entry, System.nanoTime ())) {
+            remove (key, entry);
+            return null;
+        }
+
+        return entry;
+    }
+
+    private boolean isExpired (final Entry<V> entry, final long now) {
+        return NEVER != expireNanos && null != entry.value && now - entry.written >= expireNanos;
+    }
+
+    private synchronized void loaded (final K key, final Entry<V> entry, final V value) {
+        // invalidated or replaced while loading
+        if (entries.get (key) != entry)
+            return;
+
+        store (key, entry, value, true);
+    }
+
+    private synchronized void loadFailed (final K key, final Entry<V> entry) {
+        if (entries.get (key) == entry)
+            entries.remove (key);
+    }
+
+    /**
+     Guarded by this
+
+     @param admit
+     whether the value has to pass the {@link Eviction#TINY_LFU} admission check when it pushes other entries out
+     */
+    private void store (final K key, final Entry<V> entry, final V value, final boolean admit) {
+        final SimplePromise<V> completed = new SimplePromise<> ();
+        completed.trySuccess (value);
+
+        entry.value = completed;
+        entry.load = null;
+        entry.weight = null == weigher ? 1 : weigher.weigh (key, value);
+        entry.written = System.nanoTime ();
+        weight += entry.weight;
+
+        if (weight > maximumWeight)
+            evict (maximumWeight, key, entry, admit);
+    }
+
+    /**
+     Evict least recently used entries until the cache weighs no more than <code>target</code>. Guarded by this.
+
+     @param candidate
+     key of the value that was just added, if any
+     @param admit
+     with TinyLFU, only keep <code>candidate</code> if it's used more often than the entries it pushes out
+     */
+    private void evict (final long target, final K candidate, final Entry<V> candidateEntry, final boolean admit) {
+        boolean admitted = null == sketch || null == candidate || !admit;
+
+        for (final Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet ().iterator ();
+             weight > target && iterator.hasNext (); ) {
+            final Map.Entry<K, Entry<V>> eldest = iterator.next ();
+            final Entry<V> victim = eldest.getValue ();
+
+            // still loading or the newcomer itself
+            if (null == victim.value || victim == candidateEntry)
+                continue;
+
+            if (!admitted) {
+                if (sketch.frequency (candidate) <= sketch.frequency (eldest.getKey ())) {
+                    remove (candidate, candidateEntry);
+                    return;
+                }
+
+                admitted = true;
+            }
+
+            iterator.remove ();
+            weight -= victim.weight;
+        }
+
+        // nothing else left to make room: the newcomer doesn't fit on its own
+        if (weight > target && null != candidateEntry)
+            remove (candidate, candidateEntry);
+    }
+
+    /**
+     Guarded by this
+     */
+    private void purgeExpired () {
+        if (NEVER == expireNanos)
+            return;
+
+        final long now = System.nanoTime ();
+
+        for (final Iterator<Entry<V>> iterator = entries.values ().iterator (); iterator.hasNext (); ) {
+            final Entry<V> entry = iterator.next ();
+
+            if (isExpired (entry, now)) {
+                iterator.remove ();
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    /**
+     Guarded by this
+     */
+    private void remove (final K key, final Entry<V> entry) {
+        if (null == entry || entries.get (key) != entry)
+            return;
+
+        entries.remove (key);
+        weight -= entry.weight;
+    }
+
+    private static final class Entry<V> {
+        // the load in progress. null once the value is cached (or if it was put () directly).
+        FuturePromise<V> load;
+
+        SimplePromise<V> value;
+        int              weight;
+        long             written;
+
+        Entry (final FuturePromise<V> loading) {
+            load = loading;
+        }
+    }
+
+    /**
+     Caches the outcome of a load
+     */
+    private final class Completion
+      implements Promise.OnCompleteListener<V>, Promise.OnFailListener, Promise.OnCancelListener {
+        private final K        key;
+        private final Entry<V> entry;
+
+        Completion (final K k, final Entry<V> e) {
+            key = k;
+            entry = e;
+        }
+
+        @Override public void onComplete (final V result) {
+            loaded (key, entry, result);
+        }
+
+        @Override public void onFailed (final Throwable error) {
+            loadFailed (key, entry);
+        }
+
+        @Override public void onCancelled () {
+            loadFailed (key, entry);
+        }
+    }
+
+    /**
+     Approximate use counts for TinyLFU: a count-min sketch of 4 bit counters, 16 to a <code>long</code>. All
+     counters are halved once enough uses have been recorded, so the counts favor recent use. Guarded by the cache.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS     = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                                                 0xcbf29ce484222325L};
+        private static final long   HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int    mask;
+        private final int    sampleSize;
+        private       int    additions;
+
+        FrequencySketch (final long expectedEntries) {
+            final int entries = (int) Math.max (16, Math.min (expectedEntries, MAX_SKETCH_ENTRIES));
+            final int size = Integer.highestOneBit (entries - 1) << 1;
+
+            table = new long[size];
+            mask = size - 1;
+            sampleSize = 10 * size;
+        }
+
+        int frequency (final Object key) {
+            final int hash = spread (key.hashCode ());
+            int frequency = 15;
+
+            for (int i = 0; i < 4; i++)
+                frequency = Math.min (frequency, (int) ((table[indexOf (hash, i)] >>> offsetOf (hash, i)) & 0xF));
+
+            return frequency;
+        }
+
+        void increment (final Object key) {
+            final int hash = spread (key.hashCode ());
+            boolean added = false;
+
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf (hash, i);
+                final int offset = offsetOf (hash, i);
+
+                if (((table[index] >>> offset) & 0xF) != 0xF) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions == sampleSize)
+                reset ();
+        }
+
+        private void reset () {
+            for (int i = 0; i < table.length; i++)
+                table[i] = (table[i] >>> 1) & HALF_MASK;
+
+            additions /= 2;
+        }
+
+        private int indexOf (final int hash, final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        // which of the 16 counters in the long: a different nibble of the hash for each row
+        private static int offsetOf (final int hash, final int i) {
+            return ((hash >>> (i << 3)) & 0xF) << 2;
+        }
+
+        private static int spread (int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            h *= 0xac4c1b51;
+            h ^= h >>> 15;
+            return h;
+        }
+    }
+
+    /**
+     {@link PromiseCache} builder
+     */
+    public static final class Builder<K, V> {
+        private long          maximumWeight = Long.MAX_VALUE;
+        private Weigher<K, V> weigher;
+        private Eviction      eviction      = Eviction.LRU;
+        private long          expireNanos   = NEVER;
+        private Executor      executor;
+        private Executor      callbackExecutor;
+
+        Builder () {
+        }
+
+        /**
+         Maximum total weight of the cached values. Unbounded by default.
+
+         @return this builder instance
+         */
+        public Builder<K, V> maximumWeight (final long maximumWeight) {
+            if (maximumWeight <= 0)
+                throw new IllegalArgumentException ("Invalid maximum weight: " + maximumWeight);
+
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         How much each value weighs. By default, every value weighs 1.
+
+         @return this builder instance
+         */
+        public Builder<K, V> weigher (@NonNull final Weigher<K, V> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         How to make room once the cache is full. Default is {@link Eviction#LRU}.
+
+         @return this builder instance
+         */
+        public Builder<K, V> eviction (@NonNull final Eviction eviction) {
+            this.eviction = eviction;
+            return this;
+        }
+
+        /**
+         Drop values once they have been cached for <code>duration</code>. Values never expire by default.
+
+         @return this builder instance
+         */
+        public Builder<K, V> expireAfterWrite (final long duration, @NonNull final TimeUnit unit) {
+            if (duration <= 0)
+                throw new IllegalArgumentException ("Invalid expiration: " + duration);
+
+            expireNanos = unit.toNanos (duration);
+            return this;
+        }
+
+        /**
+         Executor to load values on. Default is {@link ThreadPool#background()}.
+
+         @return this builder instance
+         */
+        public Builder<K, V> executor (@NonNull final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         Executor that the promises of values being loaded notify their listeners on. By default, they are notified
+         on the loading thread. Promises of cached values notify their listeners right away.
+
+         @return this builder instance
+         */
+        public Builder<K, V> callbackExecutor (@Nullable final Executor executor) {
+            callbackExecutor = executor;
+            return this;
+        }
+
+        /**
+         @param loader
+         loads values that aren't cached
+
+         @return a new cache
+         */
+        public PromiseCache<K, V> build (@NonNull final Loader<K, V> loader) {
+            return new PromiseCache<> (this, loader);
+        }
+    }
+}
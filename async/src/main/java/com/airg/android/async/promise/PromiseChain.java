@@ -0,0 +1,223 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import java.util.concurrent.Executor;
+
+/**
+ Implementation of the {@link Promise} chaining methods ({@link Promise#map(Promise.Transform) map},
+ {@link Promise#then(Promise.AsyncTransform) then}, {@link Promise#recover(Promise.Recovery) recover} and
+ {@link Promise#onExecutor(Executor) onExecutor}), shared by all promise implementations. Each one returns a new
+ {@link SimplePromise} that is completed by listeners on the source promise. Those listeners run wherever the source
+ promise notifies its listeners, so a chain does not hop threads unless asked to.
+ <p>
+ Cancellation travels both ways. Cancelling a promise cancels the promises derived from it, and steps that haven't run
+ yet are skipped. Cancelling a derived promise cancels its source as soon as nothing else depends on it: no other
+ derived promise and no listener added directly.
+ */
+final class PromiseChain {
+    private PromiseChain () {
+    }
+
+    static <IN, OUT> SimplePromise<OUT> map (final Promise<IN> source,
+                                             final Promise.Transform<? super IN, ? extends OUT> transform) {
+        if (null == transform)
+            throw new NullPointerException ("transform");
+
+        final SimplePromise<OUT> derived = new SimplePromise<> ();
+
+        listen (source, new Forward<IN, OUT> (derived) {
+            @Override public void onComplete (final IN result) {
+                final OUT mapped;
+
+                // cancelled downstream: don't bother
+                if (derived.isDone ())
+                    return;
+
+                try {
+                    mapped = transform.apply (result);
+                } catch (Throwable t) {
+                    derived.tryFail (t);
+                    return;
+                }
+
+                derived.trySuccess (mapped);
+            }
+        });
+
+        return derived;
+    }
+
+    static <IN, OUT> SimplePromise<OUT> then (final Promise<IN> source,
+                                              final Promise.AsyncTransform<? super IN, OUT> transform) {
+        if (null == transform)
+            throw new NullPointerException ("transform");
+
+        final SimplePromise<OUT> derived = new SimplePromise<> ();
+
+        listen (source, new Forward<IN, OUT> (derived) {
+            @Override public void onComplete (final IN result) {
+                final Promise<OUT> next;
+
+                if (derived.isDone ())
+                    return;
+
+                try {
+                    next = transform.apply (result);
+                } catch (Throwable t) {
+                    derived.tryFail (t);
+                    return;
+                }
+
+                if (null == next)
+                    derived.tryFail (new NullPointerException ("AsyncTransform returned a null promise"));
+                else
+                    forward (next, derived);
+            }
+        });
+
+        return derived;
+    }
+
+    static <RESULT> SimplePromise<RESULT> recover (final Promise<RESULT> source,
+                                                   final Promise.Recovery<? extends RESULT> recovery) {
+        if (null == recovery)
+            throw new NullPointerException ("recovery");
+
+        final SimplePromise<RESULT> derived = new SimplePromise<> ();
+
+        listen (source, new Forward<RESULT, RESULT> (derived) {
+            @Override public void onFailed (final Throwable error) {
+                final RESULT recovered;
+
+                if (derived.isDone ())
+                    return;
+
+                try {
+                    recovered = recovery.recover (error);
+                } catch (Throwable t) {
+                    derived.tryFail (t);
+                    return;
+                }
+
+                derived.trySuccess (recovered);
+            }
+        });
+
+        return derived;
+    }
+
+    static <RESULT> SimplePromise<RESULT> onExecutor (final Promise<RESULT> source, final Executor executor) {
+        if (null == executor)
+            throw new NullPointerException ("executor");
+
+        // the derived promise notifies its own listeners (including any further chained steps) on the executor
+        final SimplePromise<RESULT> derived = new SimplePromise<> (executor);
+        forward (source, derived);
+        return derived;
+    }
+
+    /**
+     Complete <code>target</code> the same way <code>source</code> completes
+     */
+    static <RESULT> boolean forward (final Promise<RESULT> source, final SimplePromise<RESULT> target) {
+        return listen (source, new Forward<RESULT, RESULT> (target));
+    }
+
+    private static <IN> boolean listen (final Promise<IN> source, final Forward<IN, ?> forward) {
+        return consume (source, forward, forward.target);
+    }
+
+    /**
+     Make <code>derived</code> a consumer of <code>source</code>: <code>listener</code> hears about the outcome of
+     <code>source</code>, and cancelling <code>derived</code> cancels <code>source</code> once none of its other
+     consumers are interested anymore. Promises other than the ones in this package can't tell, so they are never
+     cancelled that way.
+
+     @return <code>false</code> if <code>source</code> is about to be cancelled because its last consumer lost
+     interest. <code>listener</code> hears about the cancellation, but <code>derived</code> doesn't count as a consumer.
+     */
+    static <IN, L extends Promise.OnCompleteListener<IN> & Promise.OnFailListener & Promise.OnCancelListener> boolean
+    consume (final Promise<IN> source, final L listener, final SimplePromise<?> derived) {
+        final SimplePromise<IN> core = core (source);
+
+        if (null == core) {
+            source.onComplete (listener);
+            source.onFail (listener);
+            source.onCancel (listener);
+            return true;
+        }
+
+        if (!core.consume (listener))
+            return false;
+
+        derived.onCancelInternal (new Promise.OnCancelListener () {
+            @Override public void onCancelled () {
+                if (core.release ())
+                    source.cancel ();
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     @return the promise that notifies the listeners of <code>promise</code> or <code>null</code> if it isn't one of
+     ours
+     */
+    @SuppressWarnings ("unchecked")
+    static <RESULT> SimplePromise<RESULT> core (final Promise<RESULT> promise) {
+        if (promise instanceof SimplePromise)
+            return (SimplePromise<RESULT>) promise;
+
+        if (promise instanceof AbstractPromise)
+            return ((AbstractPromise<RESULT>) promise).core ();
+
+        if (promise instanceof FuturePromise)
+            return ((FuturePromise<RESULT>) promise).core ();
+
+        return null;
+    }
+
+    /**
+     Passes every outcome of a source promise on to a derived promise. Steps override the outcome they act on; the
+     default success forwarding is only used where <code>IN</code> and <code>OUT</code> are the same type.
+     */
+    private static class Forward<IN, OUT>
+      implements Promise.OnCompleteListener<IN>, Promise.OnFailListener, Promise.OnCancelListener {
+        final SimplePromise<OUT> target;
+
+        Forward (final SimplePromise<OUT> derived) {
+            target = derived;
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override public void onComplete (final IN result) {
+            target.trySuccess ((OUT) result);
+        }
+
+        @Override public void onFailed (final Throwable error) {
+            target.tryFail (error);
+        }
+
+        @Override public void onCancelled () {
+            target.tryCancel ();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.annotation.RestrictTo;
+
+import com.airg.android.async.TimingWheel;
+
+/**
+ Access to promise internals for the rest of the library (the pools, their backpressure handling and task scopes).
+ Not part of the public API: the methods here let a caller complete or rewire promises it doesn't own.
+ */
+@RestrictTo (RestrictTo.Scope.LIBRARY)
+public final class PromiseInternals {
+    private PromiseInternals () {
+    }
+
+    /**
+     Fail a task that will never run, i.e. because its pool rejected it. Has no effect if the promise is already done.
+
+     @return <code>false</code> if <code>promise</code> isn't one of ours and can't be failed from outside
+     */
+    public static boolean fail (final Promise<?> promise, final Throwable cause) {
+        if (promise instanceof FuturePromise) {
+            ((FuturePromise<?>) promise).fail (cause);
+            return true;
+        }
+
+        if (promise instanceof AbstractPromise) {
+            ((AbstractPromise<?>) promise).core ().tryFail (cause);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     See {@link FuturePromise#bindTimeout(TimingWheel.Timeout)}
+     */
+    public static void bindTimeout (final FuturePromise<?> task, final TimingWheel.Timeout timeout) {
+        task.bindTimeout (timeout);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import com.airg.android.async.ThreadPool;
+import com.airg.android.async.TimingWheel;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ Implementation of {@link Promise#timeout(long, TimeUnit)}. All promise timeouts share the
+ {@link ThreadPool#timer() timer}, so a pending timeout costs one small timer entry: no thread and no
+ <code>Handler</code> message. The timer thread only hands expired timeouts off to the {@link ThreadPool#io() I/O
+ pool}, where the promise is failed and its listeners run. Not the background pool: its threads may all be busy
+ running the very tasks that are timing out.
+ */
+final class PromiseTimeout {
+    private PromiseTimeout () {
+    }
+
+    /**
+     @param promise
+     promise to time out
+     @param timeout
+     time the promise has to complete
+     @param unit
+     unit of <code>timeout</code>
+     @param expire
+     fails the promise. Only runs if the promise isn't done by the time the timeout expires.
+
+     @return the timer entry. Cancel it once the promise is done.
+     */
+    static TimingWheel.Timeout schedule (final Promise<?> promise, final long timeout, final TimeUnit unit,
+                                         final Runnable expire) {
+        return ThreadPool.timer ().schedule (new Runnable () {
+            @Override public void run () {
+                if (!promise.isDone ())
+                    ThreadPool.io (expire);
+            }
+        }, timeout, unit);
+    }
+
+    static TimeoutException exception (final long timeout, final TimeUnit unit) {
+        return new TimeoutException (String.format (Locale.ENGLISH, "Timed out after %d %s", timeout,
+                                                    unit.name ().toLowerCase (Locale.ENGLISH)));
+    }
+}
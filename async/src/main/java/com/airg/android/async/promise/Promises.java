@@ -0,0 +1,329 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ Combine several {@link Promise}s into one. Aggregation is lock-free: every source completion costs one atomic update,
+ so combining <code>N</code> promises is <code>O(N)</code>. The returned promises notify their listeners on the thread
+ that completes them, i.e. the thread that completes the last (or first, for {@link #any(Collection) any} and
+ {@link #race(Collection) race}) source promise.
+ <p>
+ Cancelling the returned promise cancels the source promises that nothing else depends on (see
+ {@link Promise#cancel()}).
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class Promises {
+    private Promises () {
+    }
+
+    /**
+     Wait for all promises to succeed
+
+     @param promises
+     promises to wait for
+
+     @return a promise of all results, in the same order as <code>promises</code>. Fails as soon as one of the promises
+     fails and is cancelled as soon as one of them is cancelled.
+     */
+    public static <T> Promise<List<T>> all (final Collection<? extends Promise<? extends T>> promises) {
+        final SimplePromise<List<T>> all = new SimplePromise<> ();
+        final int count = promises.size ();
+
+        if (0 == count) {
+            all.trySuccess (Collections.<T>emptyList ());
+            return all;
+        }
+
+        final AtomicReferenceArray<T> results = new AtomicReferenceArray<> (count);
+        final AtomicInteger remaining = new AtomicInteger (count);
+
+        int index = 0;
+        for (final Promise<? extends T> promise : promises) {
+            final int slot = index++;
+
+            listen (promise, all, new Listener<T> () {
+                @Override public void onComplete (final T result) {
+                    results.set (slot, result);
+
+                    if (0 != remaining.decrementAndGet ())
+                        return;
+
+                    final List<T> list = new ArrayList<> (count);
+                    for (int i = 0; i < count; i++)
+                        list.add (results.get (i));
+
+                    all.trySuccess (list);
+                }
+
+                @Override public void onFailed (final Throwable error) {
+                    all.tryFail (error);
+                }
+
+                @Override public void onCancelled () {
+                    all.tryCancel ();
+                }
+            });
+        }
+
+        return all;
+    }
+
+    /**
+     Wait for all promises to complete, whatever the outcome
+
+     @param promises
+     promises to wait for
+
+     @return a promise of the source promises, in the same order, once all of them are done. Never fails.
+     */
+    public static <P extends Promise<?>> Promise<List<P>> allSettled (final Collection<P> promises) {
+        final SimplePromise<List<P>> settled = new SimplePromise<> ();
+        final List<P> list = Collections.unmodifiableList (new ArrayList<> (promises));
+
+        if (list.isEmpty ()) {
+            settled.trySuccess (list);
+            return settled;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger (list.size ());
+        final Listener<Object> listener = new Listener<Object> () {
+            @Override public void onComplete (final Object result) {
+                settle ();
+            }
+
+            @Override public void onFailed (final Throwable error) {
+                settle ();
+            }
+
+            @Override public void onCancelled () {
+                settle ();
+            }
+
+            private void settle () {
+                if (0 == remaining.decrementAndGet ())
+                    settled.trySuccess (list);
+            }
+        };
+
+        for (final P promise : list)
+            listen (promise, settled, listener);
+
+        return settled;
+    }
+
+    /**
+     Same as {@link #any(Collection, boolean) any (promises, false)}
+     */
+    public static <T> Promise<T> any (final Collection<? extends Promise<? extends T>> promises) {
+        return any (promises, false);
+    }
+
+    /**
+     Wait for the first promise to succeed
+
+     @param promises
+     promises to wait for
+     @param cancelLosers
+     cancel the remaining promises once one of them succeeds
+
+     @return a promise of the first successful result. If none of the promises succeed, it fails with an
+     {@link AllFailedException} whose cause is the earliest failure, with the later ones
+     {@link Throwable#getSuppressed() suppressed} in the order they happened (cancellations count as failures).
+     */
+    public static <T> Promise<T> any (final Collection<? extends Promise<? extends T>> promises,
+                                      final boolean cancelLosers) {
+        final SimplePromise<T> any = new SimplePromise<> ();
+        final int count = promises.size ();
+
+        if (0 == count) {
+            any.tryFail (new NoSuchElementException ("No promises"));
+            return any;
+        }
+
+        final List<Promise<? extends T>> sources = new ArrayList<> (promises);
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<> ();
+        final AtomicInteger remaining = new AtomicInteger (count);
+
+        for (int i = 0; i < count; i++) {
+            listen (sources.get (i), any, new Listener<T> () {
+                @Override public void onComplete (final T result) {
+                    if (any.trySuccess (result) && cancelLosers)
+                        cancelAll (sources);
+                }
+
+                @Override public void onFailed (final Throwable error) {
+                    lost (error);
+                }
+
+                @Override public void onCancelled () {
+                    lost (new CancellationException ());
+                }
+
+                private void lost (final Throwable error) {
+                    errors.add (error);
+
+                    if (0 == remaining.decrementAndGet ())
+                        any.tryFail (new AllFailedException (errors));
+                }
+            });
+        }
+
+        return any;
+    }
+
+    /**
+     Same as {@link #race(Collection, boolean) race (promises, false)}
+     */
+    public static <T> Promise<T> race (final Collection<? extends Promise<? extends T>> promises) {
+        return race (promises, false);
+    }
+
+    /**
+     Wait for the first promise to complete, whatever the outcome
+
+     @param promises
+     promises to wait for
+     @param cancelLosers
+     cancel the remaining promises once one of them completes
+
+     @return a promise that completes the same way as the first promise to complete. Fails with a
+     {@link NoSuchElementException} if <code>promises</code> is empty.
+     */
+    public static <T> Promise<T> race (final Collection<? extends Promise<? extends T>> promises,
+                                       final boolean cancelLosers) {
+        final SimplePromise<T> race = new SimplePromise<> ();
+
+        if (promises.isEmpty ()) {
+            race.tryFail (new NoSuchElementException ("No promises"));
+            return race;
+        }
+
+        final List<Promise<? extends T>> sources = new ArrayList<> (promises);
+        final Listener<T> listener = new Listener<T> () {
+            @Override public void onComplete (final T result) {
+                if (race.trySuccess (result))
+                    won ();
+            }
+
+            @Override public void onFailed (final Throwable error) {
+                if (race.tryFail (error))
+                    won ();
+            }
+
+            @Override public void onCancelled () {
+                if (race.tryCancel ())
+                    won ();
+            }
+
+            private void won () {
+                if (cancelLosers)
+                    cancelAll (sources);
+            }
+        };
+
+        for (final Promise<? extends T> promise : sources)
+            listen (promise, race, listener);
+
+        return race;
+    }
+
+    /**
+     Run a callback once a promise is done, however it completes. Unlike a listener added through
+     <code>onComplete</code> and friends, the callback doesn't count as interest in the result: cancelling the promises
+     derived from <code>promise</code> still cancels it (see {@link Promise#cancel()}).
+
+     @param promise
+     promise to watch
+     @param callback
+     runs on the thread that completes <code>promise</code>, or right away if it's already done
+     */
+    @SuppressWarnings ("unchecked")
+    public static void whenDone (final Promise<?> promise, final Runnable callback) {
+        final Listener<Object> listener = new Listener<Object> () {
+            @Override public void onComplete (final Object result) {
+                callback.run ();
+            }
+
+            @Override public void onFailed (final Throwable error) {
+                callback.run ();
+            }
+
+            @Override public void onCancelled () {
+                callback.run ();
+            }
+        };
+
+        final SimplePromise<Object> core = PromiseChain.core ((Promise<Object>) promise);
+
+        if (null != core)
+            core.observe (listener);
+        else {
+            // can't tell interest apart in other implementations
+            final Promise<Object> other = (Promise<Object>) promise;
+            other.onComplete (listener);
+            other.onFail (listener);
+            other.onCancel (listener);
+        }
+    }
+
+    // the winner is already done: cancelling it is a no-op
+    private static void cancelAll (final List<? extends Promise<?>> promises) {
+        for (final Promise<?> promise : promises)
+            promise.cancel ();
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static <T> void listen (final Promise<? extends T> promise, final SimplePromise<?> aggregate,
+                                    final Listener<T> listener) {
+        PromiseChain.consume ((Promise<T>) promise, listener, aggregate);
+    }
+
+    private interface Listener<T>
+      extends Promise.OnCompleteListener<T>, Promise.OnFailListener, Promise.OnCancelListener {
+    }
+
+    /**
+     Failure of {@link #any(Collection, boolean) any ()} when none of the promises succeeded. The errors of the
+     promises themselves are left untouched: the earliest one is the cause, the others are suppressed by this one.
+     */
+    public static final class AllFailedException
+      extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AllFailedException (final Collection<Throwable> errors) {
+            super ("None of the promises succeeded", errors.iterator ().next ());
+
+            for (final Throwable error : errors)
+                // several promises may have failed with the same exception
+                if (error != getCause ())
+                    addSuppressed (error);
+        }
+    }
+}
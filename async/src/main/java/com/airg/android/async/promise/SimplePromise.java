@@ -20,12 +20,20 @@ package com.airg.android.async.promise;
 
 import android.support.annotation.Nullable;
 
+import com.airg.android.async.AsyncHelper;
+import com.airg.android.async.TimingWheel;
 //import com.airg.android.logging.Logger;
 //import com.airg.android.logging.TaggedLogger;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-
-import lombok.Synchronized;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  An implementation of {@link Promise} that can be retrofitted into any asynchronous flow:
@@ -53,22 +61,74 @@ import lombok.Synchronized;
  }
  }
  </pre>
+ The state of the promise (pending, succeeded, failed or cancelled, along with the result or error) lives in a single
+ field that only ever moves once, from pending to one of the completed states, by compare-and-set. None of the methods
+ lock: state queries are plain volatile reads.
+ <p>
+ Notifying listeners doesn't allocate: inline callbacks are called directly and, given a callback executor, the promise
+ itself is the <code>Runnable</code> handed to the executor.
 
  @author Mahram Z. Foadi */
 @SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
 public class SimplePromise<RESULT>
-  implements Promise<RESULT> {
+  implements Promise<RESULT>, Runnable {
     //private static final TaggedLogger LOG = Logger.tag ("ASYNC:SP");
 
-    private OnCompleteListener<RESULT> onCompleteListener;
-    private OnFailListener             onFailListener;
-    private OnCancelListener           onCancelListener;
+    // completed state markers. A successful result is stored as is (NIL standing in for null).
+    private static final Object NIL       = new Object ();
+    private static final Object CANCELLED = new Object ();
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimplePromise, Object> STATE =
+      AtomicReferenceFieldUpdater.newUpdater (SimplePromise.class, Object.class, "state");
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimplePromise, Listener> LISTENERS =
+      AtomicReferenceFieldUpdater.newUpdater (SimplePromise.class, Listener.class, "listeners");
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimplePromise, Listener> DISPATCH =
+      AtomicReferenceFieldUpdater.newUpdater (SimplePromise.class, Listener.class, "pending");
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimplePromise, Waiter> WAITERS =
+      AtomicReferenceFieldUpdater.newUpdater (SimplePromise.class, Waiter.class, "waiters");
+
+    @SuppressWarnings ("rawtypes")
+    private static final AtomicIntegerFieldUpdater<SimplePromise> CONSUMERS =
+      AtomicIntegerFieldUpdater.newUpdater (SimplePromise.class, "consumers");
+
+    // how often a waiting thread checks the state before it parks. Spinning only helps if the completing thread can run
+    // at the same time.
+    private static final int SPIN_TRIES = Runtime.getRuntime ().availableProcessors () > 1 ? 64 : 0;
+
+    // top of the listener stack once it's been drained: later listeners are called right away
+    private static final Listener DRAINED = new Listener (null, Listener.COMPLETE);
 
-    private volatile Throwable error  = null;
-    private volatile RESULT    result = null;
+    // consumer count once the last consumer released the promise: it's about to be cancelled, no one can join anymore
+    private static final int RELEASED = -1;
 
-    private volatile boolean done      = false;
-    private volatile boolean cancelled = false;
+    // set in the consumer count once a listener was added directly. Part of the same word, so a release and a pin
+    // can't both win.
+    private static final int PINNED = 1 << 30;
+
+    // null while pending
+    private volatile Object   state;
+    private volatile Listener listeners;
+
+    // listeners waiting to be notified on the callback executor, newest first
+    private volatile Listener pending;
+
+    // threads blocked in await (), newest first. Kept apart from the listeners, so a waiter that gives up can unlink
+    // itself while the completing thread walks the stack.
+    private volatile Waiter waiters;
+
+    // derived promises (see PromiseChain) still interested in the outcome. Once the last one is cancelled, this
+    // promise is cancelled too, unless a listener was added directly (see PINNED).
+    private volatile int consumers;
+
+    // pending timeout (see timeout ()), cancelled once the promise is done
+    private volatile TimingWheel.Timeout deadline;
 
     private final Executor callbackExecutor;
 
@@ -81,108 +141,236 @@ public class SimplePromise<RESULT>
     }
 
     /**
-     Report task result and mark task as done
+     Report task result and mark task as done. Ignored if the promise has been cancelled (this used to throw, like a
+     second result still does). A <code>null</code> result counts as a success.
 
      @param r
      obtained result
+
+     @throws IllegalStateException
+     if the promise already succeeded or failed
      */
-    @Synchronized
     public void success (final RESULT r) {
-        assertNotComplete ();
-
-        if (cancelled) {
-            //LOG.d ("Promise has been cancelled. Ignoring result.");
-            return;
-        }
-
-        //LOG.d ("Promise kept: %s", r);
-        done = true;
-        result = r;
-        notifyDoneMaybe ();
+        if (!trySuccess (r))
+            assertCancelled ();
     }
 
     /**
-     Mark task as failed and provide a cause
+     Mark task as failed and provide a cause. Ignored if the promise has been cancelled (this used to throw, like a
+     second result still does).
 
      @param t
      cause of the failure
+
+     @throws IllegalStateException
+     if the promise already succeeded or failed
      */
-    @Synchronized
     public void failed (Throwable t) {
-        assertNotComplete ();
+        if (!tryFail (t))
+            assertCancelled ();
+    }
 
-        if (cancelled) { // if the task is already cancelled, don't report a failure
-            //LOG.d ("Promise has been cancelled. Ignoring failure.");
-            return;
+    /**
+     Mark task as cancelled. Ignored if the promise is already complete.
+     */
+    public void cancelled () {
+        tryCancel ();
+    }
+
+    /**
+     Same as {@link #cancelled()}: a <code>SimplePromise</code> has no task of its own to stop
+     */
+    @Override
+    public void cancel () {
+        tryCancel ();
+    }
+
+    /**
+     Cancel the timer entry once this promise is done
+     */
+    void bindDeadline (final TimingWheel.Timeout timeout) {
+        deadline = timeout;
+
+        // notifyListeners () may have missed it
+        if (isDone ())
+            timeout.cancel ();
+    }
+
+    /**
+     @return the cause of the failure or <code>null</code> if the promise didn't fail
+     */
+    Throwable failure () {
+        final Object current = state;
+        return current instanceof Failure ? ((Failure) current).cause : null;
+    }
+
+    /**
+     Register the listeners of a derived promise. Unlike listeners added through <code>onComplete</code> and friends, a
+     consumer can lose interest again: see {@link #release()}.
+
+     @return <code>false</code> if the last consumer has already released the promise. The listeners are still added,
+     but don't count as a consumer, so they must not call <code>release ()</code>.
+     */
+    <L extends OnCompleteListener<RESULT> & OnFailListener & OnCancelListener> boolean consume (final L listener) {
+        final boolean joined = join ();
+        addListener (listener, Listener.COMPLETE);
+        addListener (listener, Listener.FAIL);
+        addListener (listener, Listener.CANCEL);
+        return joined;
+    }
+
+    /**
+     A consumer was cancelled. Once the last one is, the promise can't be consumed again.
+
+     @return <code>true</code> if nobody is interested in the outcome anymore, i.e. the promise can be cancelled
+     */
+    boolean release () {
+        while (true) {
+            final int current = consumers;
+
+            if (RELEASED == current)
+                return false;
+
+            // claim it, so no one joins or pins between here and the cancel
+            if (1 == current) {
+                if (CONSUMERS.compareAndSet (this, 1, RELEASED))
+                    return true;
+            } else if (CONSUMERS.compareAndSet (this, current, current - 1))
+                return false;
+        }
+    }
+
+    private boolean join () {
+        while (true) {
+            final int current = consumers;
+
+            if (RELEASED == current)
+                return false;
+
+            if (CONSUMERS.compareAndSet (this, current, current + 1))
+                return true;
         }
+    }
+
+    /**
+     Add a listener for every outcome without pinning the promise or counting as a consumer
+     */
+    <L extends OnCompleteListener<RESULT> & OnFailListener & OnCancelListener> void observe (final L listener) {
+        addListener (listener, Listener.COMPLETE);
+        addListener (listener, Listener.FAIL);
+        addListener (listener, Listener.CANCEL);
+    }
+
+    /**
+     Add a cancellation listener without pinning the promise
+     */
+    void onCancelInternal (final OnCancelListener listener) {
+        addListener (listener, Listener.CANCEL);
+    }
+
+    /**
+     Complete the promise with a result, unless it's already complete
+
+     @return <code>true</code> if this call completed the promise
+     */
+    boolean trySuccess (final RESULT r) {
+        if (!STATE.compareAndSet (this, null, null == r ? NIL : r))
+            return false;
+
+        //LOG.d ("Promise kept: %s", r);
+        notifyListeners ();
+        return true;
+    }
+
+    /**
+     Fail the promise, unless it's already complete
+
+     @return <code>true</code> if this call completed the promise
+     */
+    boolean tryFail (final Throwable t) {
+        if (!STATE.compareAndSet (this, null, new Failure (t)))
+            return false;
 
         //LOG.d (t, "Promise broken");
-        error = t;
-        done = true;
-        notifyFailedMaybe ();
+        notifyListeners ();
+        return true;
     }
 
     /**
-     Mark task as cancelled
+     Cancel the promise, unless it's already complete
+
+     @return <code>true</code> if this call completed the promise
      */
-    @Synchronized
-    public void cancelled () {
-        if (done || isFailed ()) {
-            //LOG.d ("Ignoring cancel request (already %s)", done ? "done" : "failed");
-            return;
-        }
+    boolean tryCancel () {
+        return tryCancel (null);
+    }
+
+    /**
+     Cancel the promise, unless it's already complete, and run <code>beforeListeners</code> once it is marked as
+     cancelled but before the listeners are notified
+
+     @return <code>true</code> if this call cancelled the promise
+     */
+    boolean tryCancel (final Runnable beforeListeners) {
+        if (!STATE.compareAndSet (this, null, CANCELLED))
+            return false;
 
         //LOG.d ("Promise cancelled.");
-        cancelled = true;
-        done = true;
-        notifyCancelledMaybe ();
+        try {
+            if (null != beforeListeners)
+                beforeListeners.run ();
+        } finally {
+            notifyListeners ();
+        }
+
+        return true;
     }
 
     /**
-     Set completion callback
+     Add a completion callback. Any number of listeners can be added; they are notified in the order they were added.
+     If the promise has already succeeded, the listener is notified right away.
 
      @param listener
      listener to notify on completion
 
      @return this {@link Promise} to chain more callbacks
      */
-    @Synchronized
     @Override
     public SimplePromise<RESULT> onComplete (OnCompleteListener<RESULT> listener) {
-        onCompleteListener = listener;
-        notifyDoneMaybe ();
+        pin (listener);
+        addListener (listener, Listener.COMPLETE);
         return this;
     }
 
     /**
-     Set failure callback
+     Add a failure callback. Any number of listeners can be added; they are notified in the order they were added. If
+     the promise has already failed, the listener is notified right away.
 
      @param listener
      listener to notify on failure.
 
      @return this {@link Promise} to chain more callbacks
      */
-    @Synchronized
     @Override
     public SimplePromise<RESULT> onFail (OnFailListener listener) {
-        onFailListener = listener;
-        notifyFailedMaybe ();
+        pin (listener);
+        addListener (listener, Listener.FAIL);
         return this;
     }
 
     /**
-     Set cancellation callback
+     Add a cancellation callback. Any number of listeners can be added; they are notified in the order they were
+     added. If the promise has already been cancelled, the listener is notified right away.
 
      @param listener
      listener to notify on cancellation
 
      @return this {@link Promise} to chain more callbacks
      */
-    @Synchronized
     @Override
     public SimplePromise<RESULT> onCancel (OnCancelListener listener) {
-        onCancelListener = listener;
-        notifyCancelledMaybe ();
+        pin (listener);
+        addListener (listener, Listener.CANCEL);
         return this;
     }
 
@@ -191,21 +379,20 @@ public class SimplePromise<RESULT>
 
      @return <code>true</code> if task is complete and <code>false</code> otherwise
      */
-    @Synchronized
     @Override
     public boolean isDone () {
-        return done;
+        return null != state;
     }
 
     /**
      Was the promise successfully completed?
 
-     @return <code>true</code> if task was able to successfully obtain a result, <code>false</code> otherwise
+     @return <code>true</code> if task was able to successfully obtain a result (<code>null</code> included),
+     <code>false</code> otherwise
      */
-    @Synchronized
     @Override
     public boolean succeeded () {
-        return done && null != result;
+        return isSuccess (state);
     }
 
     /**
@@ -213,10 +400,9 @@ public class SimplePromise<RESULT>
 
      @return <code>true</code> if failed and <code>false</code> otherwise
      */
-    @Synchronized
     @Override
     public boolean isFailed () {
-        return done && null != error;
+        return state instanceof Failure;
     }
 
     /**
@@ -224,63 +410,441 @@ public class SimplePromise<RESULT>
 
      @return <code>true</code> if cancelled and <code>false</code> otherwise
      */
-    @Synchronized
     @Override
     public boolean isCancelled () {
-        return cancelled;
+        return CANCELLED == state;
     }
 
-    // ---------- Private helper bits ----------
+    /**
+     See {@link Promise#map(Transform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> map (final Transform<? super RESULT, ? extends NEXT> transform) {
+        return PromiseChain.map (this, transform);
+    }
 
-    private void assertNotComplete () {
-        if (isDone ())
-            throw new IllegalStateException ("Already marked as " + (null == error ? "done" : "failed"));
+    /**
+     See {@link Promise#then(AsyncTransform)}
+     */
+    @Override
+    public <NEXT> Promise<NEXT> then (final AsyncTransform<? super RESULT, NEXT> transform) {
+        return PromiseChain.then (this, transform);
     }
 
-    @Synchronized
-    private void notifyDoneMaybe () {
-        if (!done || null == onCompleteListener || cancelled)
-            return;
+    /**
+     See {@link Promise#recover(Recovery)}
+     */
+    @Override
+    public Promise<RESULT> recover (final Recovery<? extends RESULT> recovery) {
+        return PromiseChain.recover (this, recovery);
+    }
+
+    /**
+     See {@link Promise#onExecutor(Executor)}
+     */
+    @Override
+    public Promise<RESULT> onExecutor (final Executor executor) {
+        return PromiseChain.onExecutor (this, executor);
+    }
 
-        //LOG.d ("Notifying promise completion");
-        runOnExecutor (new Runnable () {
+    /**
+     See {@link Promise#timeout(long, TimeUnit)}. Listeners are notified of the timeout on an I/O pool thread.
+     */
+    @Override
+    public SimplePromise<RESULT> timeout (final long timeout, final TimeUnit unit) {
+        bindDeadline (PromiseTimeout.schedule (this, timeout, unit, new Runnable () {
             @Override
             public void run () {
-                onCompleteListener.onComplete (result);
+                tryFail (PromiseTimeout.exception (timeout, unit));
             }
-        }, callbackExecutor);
+        }));
+
+        return this;
+    }
+
+    /**
+     See {@link Promise#await()}
+     */
+    @Override
+    public RESULT await () throws InterruptedException, ExecutionException {
+        AsyncHelper.assertNotMainThread ();
+        return report (waitFor (false, 0));
+    }
+
+    /**
+     See {@link Promise#await(long, TimeUnit)}
+     */
+    @Override
+    public RESULT await (final long timeout, final TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+        AsyncHelper.assertNotMainThread ();
+        final Object current = waitFor (true, unit.toNanos (timeout));
+
+        if (null == current)
+            throw new TimeoutException ();
+
+        return report (current);
+    }
+
+    /**
+     See {@link Promise#getNow(Object)}
+     */
+    @SuppressWarnings ("unchecked")
+    @Override
+    public RESULT getNow (final RESULT valueIfAbsent) {
+        final Object current = state;
+
+        if (!isSuccess (current))
+            return valueIfAbsent;
+
+        return NIL == current ? null : (RESULT) current;
+    }
+
+    // ---------- Private helper bits ----------
+
+    private void assertCancelled () {
+        final Object current = state;
+
+        if (CANCELLED != current)
+            throw new IllegalStateException ("Already marked as " + (current instanceof Failure ? "failed" : "done"));
+
+        //LOG.d ("Promise has been cancelled. Ignoring result.");
     }
 
-    @Synchronized
-    private void notifyFailedMaybe () {
-        if (!isFailed () || null == onFailListener || cancelled)
+    private void pin (final Object listener) {
+        if (null == listener)
             return;
-        //LOG.d ("Notifying promise failure");
-        runOnExecutor (new Runnable () {
-            @Override
-            public void run () {
-                onFailListener.onFailed (error);
-            }
-        }, callbackExecutor);
+
+        while (true) {
+            final int current = consumers;
+
+            // too late if released: the promise is being cancelled and the listener hears about that
+            if (RELEASED == current || 0 != (current & PINNED))
+                return;
+
+            if (CONSUMERS.compareAndSet (this, current, current | PINNED))
+                return;
+        }
+    }
+
+    private static boolean isSuccess (final Object current) {
+        return null != current && CANCELLED != current && !(current instanceof Failure);
     }
 
-    @Synchronized
-    private void notifyCancelledMaybe () {
-        if (!cancelled || null == onCancelListener)
+    private void addListener (final Object listener, final int kind) {
+        if (null == listener)
             return;
-        //LOG.d ("Notifying promise cancellation");
-        runOnExecutor (new Runnable () {
-            @Override
-            public void run () {
-                onCancelListener.onCancelled ();
+
+        // already complete: no need to allocate a stack node. Otherwise, if the stack was drained while we were
+        // getting here, notify directly.
+        if (null != state || !push (new Listener (listener, kind)))
+            notify (listener, kind, state);
+    }
+
+    /**
+     @return <code>false</code> if the listener stack has already been drained
+     */
+    private boolean push (final Listener node) {
+        while (true) {
+            final Listener head = listeners;
+
+            if (DRAINED == head)
+                return false;
+
+            node.next = head;
+
+            if (LISTENERS.compareAndSet (this, head, node))
+                return true;
+        }
+    }
+
+    /**
+     Block until the promise is done: spin briefly, then park until the completing thread wakes us up
+
+     @return the completed state or <code>null</code> if the timeout passed first
+     */
+    private Object waitFor (final boolean timed, final long nanos) throws InterruptedException {
+        Object current = state;
+
+        for (int i = 0; null == current && i < SPIN_TRIES; i++)
+            current = state;
+
+        if (null != current)
+            return current;
+
+        final long deadline = System.nanoTime () + nanos;
+        final Waiter waiter = new Waiter (Thread.currentThread ());
+
+        do {
+            waiter.next = waiters;
+        } while (!WAITERS.compareAndSet (this, waiter.next, waiter));
+
+        boolean gaveUp = true;
+
+        try {
+            while (null == (current = state)) {
+                if (Thread.interrupted ())
+                    throw new InterruptedException ();
+
+                if (!timed) {
+                    LockSupport.park (this);
+                    continue;
+                }
+
+                final long remaining = deadline - System.nanoTime ();
+
+                if (remaining <= 0)
+                    return null;
+
+                LockSupport.parkNanos (this, remaining);
             }
-        }, callbackExecutor);
+
+            gaveUp = false;
+            return current;
+        } finally {
+            // timed out or interrupted: don't leave the node behind on a promise that may stay pending for long
+            if (gaveUp)
+                removeWaiter (waiter);
+            else
+                waiter.thread = null;
+        }
     }
 
-    private static void runOnExecutor (final Runnable task, final Executor executor) {
-        if (null == executor)
-            task.run ();
+    /**
+     Unlink a waiter that gave up, along with any others that did (see <code>FutureTask</code>). Only the links of
+     nodes that are still on the stack are changed, and the completing thread only reads them, so this is safe while
+     the promise is being completed.
+     */
+    private void removeWaiter (final Waiter node) {
+        node.thread = null;
+
+        retry:
+        while (true) {
+            Waiter pred = null;
+
+            for (Waiter q = waiters, s; null != q; q = s) {
+                s = q.next;
+
+                if (null != q.thread)
+                    pred = q;
+                else if (null != pred) {
+                    pred.next = s;
+
+                    // pred gave up in the meantime: start over
+                    if (null == pred.thread)
+                        continue retry;
+                } else if (!WAITERS.compareAndSet (this, q, s))
+                    continue retry;
+            }
+
+            return;
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private RESULT report (final Object current) throws ExecutionException {
+        if (CANCELLED == current)
+            throw new CancellationException ("Promise was cancelled");
+
+        if (current instanceof Failure)
+            throw new ExecutionException (((Failure) current).cause);
+
+        return NIL == current ? null : (RESULT) current;
+    }
+
+    /**
+     Called once, by whoever completed the promise. Listeners that are added from here on are notified directly.
+     */
+    private void notifyListeners () {
+        final TimingWheel.Timeout pendingTimeout = deadline;
+
+        if (null != pendingTimeout)
+            pendingTimeout.cancel ();
+
+        // wake waiting threads up first, so they don't have to wait for the listeners
+        for (Waiter waiter = WAITERS.getAndSet (this, null); null != waiter; waiter = waiter.next) {
+            final Thread thread = waiter.thread;
+
+            if (null != thread) {
+                waiter.thread = null;
+                LockSupport.unpark (thread);
+            }
+        }
+
+        // the stack is newest first
+        Listener node = LISTENERS.getAndSet (this, DRAINED);
+        Listener newest = null;
+        Listener oldest = null;
+
+        while (null != node) {
+            final Listener next = node.next;
+
+            if (null == oldest)
+                newest = node;
+            else
+                oldest.next = node;
+
+            oldest = node;
+            node = next;
+        }
+
+        if (null == newest)
+            return;
+
+        oldest.next = null;
+
+        if (null == callbackExecutor)
+            notifyInOrder (newest);
         else
-            executor.execute (task);
+            dispatch (newest, oldest);
+    }
+
+    /**
+     Delivers the pending notifications on the callback executor: the promise hands itself to the executor instead of
+     wrapping every callback in a <code>Runnable</code>. Not meant to be called directly; does nothing if there's
+     nothing to deliver. Every listener is notified even if some of them throw; the first exception is rethrown
+     afterwards, with the others suppressed.
+     <p>
+     Final, so that a subclass that used to define a <code>run ()</code> of its own fails to compile rather than having
+     its task run again on the callback executor.
+     */
+    @Override
+    public final void run () {
+        notifyInOrder (DISPATCH.getAndSet (this, null));
+    }
+
+    /**
+     Queue listeners (newest first, linked from <code>newest</code> to <code>oldest</code>) for delivery on the
+     callback executor. If the executor rejects the delivery, the listeners are notified on the calling thread.
+     */
+    private void dispatch (final Listener newest, final Listener oldest) {
+        while (true) {
+            final Listener head = pending;
+            oldest.next = head;
+
+            if (DISPATCH.compareAndSet (this, head, newest)) {
+                // otherwise, a delivery is already on its way and will pick these up
+                if (null == head)
+                    try {
+                        callbackExecutor.execute (this);
+                    } catch (RejectedExecutionException e) {
+                        // nothing would ever clear the stack again: deliver here instead
+                        run ();
+                    }
+
+                return;
+            }
+        }
+    }
+
+    /**
+     Notify a stack of listeners, oldest first
+     */
+    private void notifyInOrder (Listener node) {
+        final Object current = state;
+
+        Listener ordered = null;
+        while (null != node) {
+            final Listener next = node.next;
+            node.next = ordered;
+            ordered = node;
+            node = next;
+        }
+
+        // a listener that throws must not cost the ones after it their notification: they may be forwarding the
+        // outcome to derived promises
+        Throwable error = null;
+
+        for (; null != ordered; ordered = ordered.next)
+            try {
+                notifyNow (ordered.listener, ordered.kind, current);
+            } catch (Throwable t) {
+                if (null == error)
+                    error = t;
+                else
+                    error.addSuppressed (t);
+            }
+
+        if (null != error)
+            rethrow (error);
+    }
+
+    private static void rethrow (final Throwable error) {
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+
+        if (error instanceof Error)
+            throw (Error) error;
+
+        throw new RuntimeException ("Listener failed", error);
+    }
+
+    /**
+     Notify a listener that was added after completion
+     */
+    private void notify (final Object listener, final int kind, final Object current) {
+        if (null == callbackExecutor)
+            notifyNow (listener, kind, current);
+        else {
+            final Listener node = new Listener (listener, kind);
+            dispatch (node, node);
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void notifyNow (final Object listener, final int kind, final Object current) {
+        if (CANCELLED == current) {
+            if (Listener.CANCEL == kind) {
+                //LOG.d ("Notifying promise cancellation");
+                ((OnCancelListener) listener).onCancelled ();
+            }
+        } else if (current instanceof Failure) {
+            if (Listener.FAIL == kind) {
+                //LOG.d ("Notifying promise failure");
+                ((OnFailListener) listener).onFailed (((Failure) current).cause);
+            }
+        } else if (Listener.COMPLETE == kind) {
+            //LOG.d ("Notifying promise completion");
+            ((OnCompleteListener<RESULT>) listener).onComplete (NIL == current ? null : (RESULT) current);
+        }
+    }
+
+    /**
+     Node of the lock-free (Treiber) stack of registered listeners
+     */
+    private static final class Listener {
+        static final int COMPLETE = 0;
+        static final int FAIL     = 1;
+        static final int CANCEL   = 2;
+
+        final Object listener;
+        final int    kind;
+        Listener     next;
+
+        Listener (final Object l, final int k) {
+            listener = l;
+            kind = k;
+        }
+    }
+
+    private static final class Waiter {
+        // cleared once the thread stops waiting
+        volatile Thread thread;
+        volatile Waiter next;
+
+        Waiter (final Thread t) {
+            thread = t;
+        }
+    }
+
+    /**
+     Completed state of a failed promise
+     */
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure (final Throwable t) {
+            cause = t;
+        }
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.async.promise;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.airg.android.async.ThreadPool;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ Collapses concurrent requests for the same key into one task. The first caller for a key starts the task; callers
+ that ask for the same key while it is running share its outcome instead of starting another one. The key is released
+ as soon as the task completes, so a later request runs the task again: nothing is cached.
+ <p>
+ Every caller gets its own promise, which it may cancel without affecting the others. The shared task is only
+ cancelled (and skipped if still queued, or interrupted, if it already started) once every caller has cancelled.
+ <pre>
+ {@code
+ private final SingleFlight<String, Bitmap> loads = new SingleFlight<> (ThreadPool.io ());
+
+ Promise<Bitmap> load (final String url) {
+ return loads.get (url, new Callable<Bitmap> () { ... });
+ }
+ }
+ </pre>
+ */
+@SuppressWarnings ( {"UnusedDeclaration", "WeakerAccess"})
+public final class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FuturePromise<V>> flights = new ConcurrentHashMap<> ();
+    // null for the background pool
+    private final Executor                           executor;
+    private final Executor                           callbackExecutor;
+
+    /**
+     Run tasks on the {@link ThreadPool#background() background pool}. The pool is only looked up when the first task
+     is started, so this may be called before {@link ThreadPool#init}.
+     */
+    public SingleFlight () {
+        this.executor = null;
+        this.callbackExecutor = null;
+    }
+
+    /**
+     @param executor
+     executor to run the tasks on
+     */
+    public SingleFlight (@NonNull final Executor executor) {
+        this (executor, null);
+    }
+
+    /**
+     @param executor
+     executor to run the tasks on
+     @param callbackExecutor
+     executor the callers' promises notify their listeners on. By default, they are notified on the thread that
+     completes the task.
+     */
+    public SingleFlight (@NonNull final Executor executor, @Nullable final Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     Get the result for a key, starting the task unless one is already in flight for that key
+
+     @param key
+     identifies the work. Must implement <code>equals</code> and <code>hashCode</code>.
+     @param task
+     computes the result. Ignored if a task for <code>key</code> is already in flight.
+
+     @return a promise of the shared result, for this caller only
+     */
+    public Promise<V> get (@NonNull final K key, @NonNull final Callable<V> task) {
+        while (true) {
+            FuturePromise<V> flight = flights.get (key);
+            FuturePromise<V> started = null;
+
+            if (null == flight) {
+                started = new FuturePromise<> (task);
+                flight = flights.putIfAbsent (key, started);
+
+                if (null == flight) {
+                    flight = started;
+                    release (key, flight);
+                } else
+                    started = null;
+            }
+
+            final SimplePromise<V> caller = new SimplePromise<> (callbackExecutor);
+
+            // joined just as every other caller cancelled it: start over
+            if (!PromiseChain.forward (flight, caller) || (null == started && flight.isCancelled ())) {
+                flights.remove (key, flight);
+                continue;
+            }
+
+            // after joining, so the task can't complete (and be forgotten) before its first caller is on board
+            if (null != started)
+                try {
+                    executor ().execute (started);
+                } catch (RejectedExecutionException e) {
+                    flights.remove (key, started);
+                    started.fail (e);
+                }
+
+            return caller;
+        }
+    }
+
+    /**
+     @return the number of keys with a task in flight
+     */
+    public int inFlight () {
+        return flights.size ();
+    }
+
+    private Executor executor () {
+        return null == executor ? ThreadPool.background () : executor;
+    }
+
+    /**
+     Forget the flight as soon as it completes. Registered before any caller, so it runs before their listeners do.
+     */
+    private void release (final K key, final FuturePromise<V> flight) {
+        flight.core ().observe (new Landing () {
+            @Override void landed () {
+                flights.remove (key, flight);
+            }
+        });
+    }
+
+    private abstract class Landing
+      implements Promise.OnCompleteListener<V>, Promise.OnFailListener, Promise.OnCancelListener {
+        abstract void landed ();
+
+        @Override public void onComplete (final V result) {
+            landed ();
+        }
+
+        @Override public void onFailed (final Throwable error) {
+            landed ();
+        }
+
+        @Override public void onCancelled () {
+            landed ();
+        }
+    }
+}
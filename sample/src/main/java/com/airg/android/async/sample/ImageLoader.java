@@ -46,9 +46,13 @@ final class ImageLoader {
     static Promise<Bitmap> loadSimplePromise(final Context context, final String imageUri) {
         final SimplePromise<Bitmap> promise = new SimplePromise<>(ThreadPool.foreground());
 
-        ThreadPool.bg(new Runnable() {
+        ThreadPool.io(new Runnable() {
             @Override
             public void run() {
+                // cancelled while queued
+                if (promise.isDone())
+                    return;
+
                 try {
                     promise.success(load(context, imageUri));
                     //LOG.d("Simple: Loaded image");
@@ -65,7 +69,7 @@ final class ImageLoader {
     static Promise<Bitmap> loadFuturePromise(final Context context, final String uri) {
         final FuturePromise<Bitmap> promise = new FuturePromise<>(new BitmapCallable(context, uri), ThreadPool.foreground());
 
-        ThreadPool.bg(promise);
+        ThreadPool.io(promise);
 
         return promise;
     }
@@ -29,6 +29,7 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 
 import com.airg.android.async.AsyncHelper;
+import com.airg.android.async.TaskScope;
 import com.airg.android.async.ThreadPool;
 import com.airg.android.async.promise.Promise;
 //import com.airg.android.logging.Logger;
@@ -62,11 +63,15 @@ public class MainActivity extends AppCompatActivity {
 
     private Executor executor;
 
+    // image loads are cancelled when the activity is destroyed (e.g. on rotation), so they can't call back into it
+    private TaskScope scope;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
+        scope = TaskScope.bind(this);
         imageUris = getResources().getStringArray(R.array.imageUris);
         selectExecutor(true);
         reloadFuturePromiseImage();
@@ -117,7 +122,7 @@ public class MainActivity extends AppCompatActivity {
     private void reloadSimplePromiseImage() {
         simplePromiseProgress.setVisibility(View.VISIBLE);
 
-        ImageLoader.loadSimplePromise(this, randomImageUri()).onComplete(new Promise.OnCompleteListener<Bitmap>() {
+        scope.track(ImageLoader.loadSimplePromise(this, randomImageUri())).onComplete(new Promise.OnCompleteListener<Bitmap>() {
             @Override
             public void onComplete(final Bitmap bitmap) {
                 simplePromiseImageView.setImageBitmap(bitmap);
@@ -136,7 +141,7 @@ public class MainActivity extends AppCompatActivity {
     private void reloadFuturePromiseImage() {
         futurePromiseProgress.setVisibility(View.VISIBLE);
 
-        ImageLoader.loadFuturePromise(this, randomImageUri())
+        scope.track(ImageLoader.loadFuturePromise(this, randomImageUri()))
                 .onComplete(new Promise.OnCompleteListener<Bitmap>() {
                     @Override
                     public void onComplete(final Bitmap bitmap) {